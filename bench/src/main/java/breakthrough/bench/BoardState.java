@@ -0,0 +1,27 @@
+package breakthrough.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A benchmark position for every board size, at the start and after some moves
+ */
+@State(Scope.Thread)
+public class BoardState {
+
+	@Param({"3x5", "5x5", "6x6", "7x7", "8x8", "9x9"})
+	public String board;
+
+	@Param({"0", "12"})
+	public int plies;
+
+	public breakthrough.State state;
+	public int[] moves = new int[breakthrough.State.MAX_MOVES];
+
+	@Setup
+	public void setup() {
+		state = Positions.create(board, plies);
+	}
+}
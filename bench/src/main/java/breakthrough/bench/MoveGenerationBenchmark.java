@@ -0,0 +1,44 @@
+package breakthrough.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+	@Benchmark
+	public int legalMoves(BoardState position) {
+		return position.state.legalMoves(position.moves);
+	}
+
+	@Benchmark
+	public boolean hasLegalMoves(BoardState position) {
+		return position.state.hasLegalMoves();
+	}
+
+	/**
+	 * Every legal move made and taken back, the way the search visits the children of a node
+	 */
+	@Benchmark
+	public void makeUnmake(BoardState position, Blackhole blackhole) {
+		breakthrough.State state = position.state;
+		int count = state.legalMoves(position.moves);
+		for(int i = 0; i < count; i++) {
+			state.successorState(position.moves[i]);
+			blackhole.consume(state.getZobristKey());
+			state.rewindState();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package breakthrough.bench;
+
+import java.util.Random;
+
+import breakthrough.State;
+
+/**
+ * The fixed positions the benchmarks run on, the same ones on every run
+ */
+public class Positions {
+
+	/**
+	 * @param board the board size as "WxH"
+	 * @param plies number of moves played from the start, picked by a fixed seed and never ending the game
+	 */
+	public static State create(String board, int plies) {
+		int width = Integer.parseInt(board.substring(0, board.indexOf('x')));
+		int height = Integer.parseInt(board.substring(board.indexOf('x') + 1));
+		State state = State.startPosition(width, height);
+		Random random = new Random(42);
+		int[] moves = new int[State.MAX_MOVES];
+		for(int ply = 0; ply < plies; ply++) {
+			int count = state.legalMoves(moves);
+			int move = 0;
+			for(int tries = 0; tries < count && move == 0; tries++) {
+				int candidate = moves[random.nextInt(count)];
+				state.successorState(candidate);
+				if(!state.isTerminalState())
+					move = candidate;
+				state.rewindState();
+			}
+			if(move == 0)
+				break;
+			state.successorState(move);
+		}
+		return new State(state);						// Copied so the benchmarks start with an empty move history
+	}
+}
@@ -0,0 +1,59 @@
+package breakthrough.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import breakthrough.Search;
+import breakthrough.SearchConfig;
+import breakthrough.TimeManager;
+import breakthrough.TranspositionTable;
+
+/**
+ * The single threaded search of AlphaBetaAgent to a fixed depth, from an empty table every time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	@State(Scope.Thread)
+	public static class Searcher {
+		@Param({"5", "7"})
+		public int depth;
+
+		TranspositionTable table = new TranspositionTable(16);
+		TimeManager time;
+		Search search;
+
+		@Setup(Level.Trial)
+		public void setupTrial() {
+			time = new TimeManager(0, 0, depth);
+		}
+
+		@Setup(Level.Invocation)
+		public void setupInvocation() {
+			table.clear();
+			search = new Search(0, table, time, null, null, new SearchConfig());	// Fresh move ordering tables, so every invocation does the same work
+			time.startUnlimited();
+		}
+	}
+
+	@Benchmark
+	public int fixedDepth(BoardState position, Searcher searcher) {
+		return searcher.search.iterativeDeepening(position.state, 1, 0);
+	}
+}
@@ -1,139 +1,225 @@
 package breakthrough;
 
-public class AlphaBetaAgent implements Agent {
-	
-	private class OutOfTimeException extends RuntimeException {};
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class AlphaBetaAgent implements Agent, SearchStatistics {
 	
-	private String role; 		// the name of this agent's role (white or BLACK)
-	private int playclock; 		// this is how much time (in seconds) we have before nextAction needs to return a move
-	private boolean myTurn; 	// whether it is this agent's turn or not
-	private int width, height; 	// dimensions of the board
-	private Pawn[][] board;		// The game board
 	private long startTime;		// The start time of the search
-	private boolean isCutOff;
-	private int numberOfExpansion;
+	private SearchConfig config;
+	private MatchSession session;		// Position, table and searchers of the current match, null between matches
+	private ExecutorService helpers;
+	private ExecutorService ponderThread;
+	private ExecutorService solverThread;
+	private Future<Integer> pondering;	// The main searcher thinking on the opponent's time, null when it is not
+	private int[] ponderMove;			// The opponent move the ponder search assumes
+	private final SearchTelemetry telemetry = new SearchTelemetry();
+	
+	public AlphaBetaAgent() {
+		this(new SearchConfig());
+	}
+	
+	public AlphaBetaAgent(SearchConfig config) {
+		this.config = config;
+	}
 
 	@Override
 	public void init(String role, int width, int height, int playclock) {
-		this.role = role;
-		this.playclock = playclock * 1000; 	// Convert to milliseconds
-		myTurn = !role.equals("white");
-		this.width = width;
-		this.height = height;
-		initBoard();
-	}
-	
-	private void initBoard() {
-		height += 2; width += 2; 				// Padding the board
-		board = new Pawn[height][width];
-		for(int i = 0; i < board[1].length - 1; i++){
-			board[1][i] = Pawn.WHITE;
-			board[2][i] = Pawn.WHITE;
-			board[height - 2][i] = Pawn.BLACK;
-			board[height - 3][i] = Pawn.BLACK;
+		stopPondering();
+		session = null;										// Let the old table go before allocating the new one
+		session = new MatchSession(role, width, height, playclock * 1000, config);
+		if(ponderThread == null) {
+			ThreadFactory daemons = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "search");
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			if(config.threads > 1)
+				helpers = Executors.newFixedThreadPool(config.threads - 1, daemons);
+			ponderThread = Executors.newSingleThreadExecutor(daemons);
+			solverThread = Executors.newSingleThreadExecutor(daemons);
 		}
 	}
 	
 	@Override
 	public String nextAction(int[] lastmove) {
 		startTime = System.currentTimeMillis();
-		if(lastmove != null) {
-			board[lastmove[3]][lastmove[2]] = board[lastmove[1]][lastmove[0]];
-			board[lastmove[1]][lastmove[0]] = null;
-		}
-		myTurn = !myTurn;
-		if(!myTurn)
+		if(lastmove != null)
+			session.play(lastmove);
+		if(!session.isMyTurn()) {
+			if(config.ponder)
+				startPondering();
 			return "NOOP";
-		return searchForBestNextAction();
+		}
+		return searchForBestNextAction(lastmove);
 	}
 	
 	@Override
 	public void cleanup() {
-		// TODO Auto-generated method stub
+		stopPondering();
+		session = null;
 	}
 	
-	private String searchForBestNextAction() {
-		State state = new State(board, role.equals("white"));
-		int depth = 0;
-		int[] move = null;
-		while(true){
-			try {
-				isCutOff = false;
-				numberOfExpansion = 0;
-				move = depthLimitedAlphaBetaSearch(state, depth);
-				if(!isCutOff)
-					break;
-				depth++;
-				//System.out.println(numberOfExpansion);
-			} catch(OutOfTimeException e) {
-				break;
-			}
+	@Override
+	public SearchTelemetry telemetry() {
+		return telemetry;
+	}
+	
+	/**
+	 * Guesses the opponent's reply and lets the main searcher think about our answer to it
+	 * until the opponent has moved. The table fills up either way.
+	 */
+	private void startPondering() {
+		State state = new State(session.state);
+		if(state.isTerminalState())
+			return;
+		int[] moves = new int[State.MAX_MOVES];
+		int count = state.legalMoves(moves);
+		int predicted = moves[0];							// Captures come first, a fair guess without a principal variation
+		for(int i = 0; i < count; i++) {
+			if(moves[i] == session.expectedMove())
+				predicted = moves[i];						// Our last search expects this reply
 		}
-		//System.out.println(depth);
-		return "(move " + move[0] + " " + move[1] + " " + move[2] + " " + move[3] + ")";
+		ponderMove = state.unpackMove(predicted);
+		final State ponderState = state.successorState(predicted);
+		if(ponderState.isTerminalState())
+			return;
+		session.table.newSearch();
+		session.time.startUnlimited();						// Started here, a ponder hit may set the deadline before the thread gets going
+		final Search search = session.searches[0];
+		pondering = ponderThread.submit(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return search.iterativeDeepening(ponderState, 1, 0);
+			}
+		});
 	}
 	
-	private int[] depthLimitedAlphaBetaSearch(State state, int depth) {
-		if(depth == 0) {
-			isCutOff = true;
-			return null;
+	private void stopPondering() {
+		if(pondering == null)
+			return;
+		session.time.stop();
+		try {
+			pondering.get();
+		} catch(Exception e) {
+			e.printStackTrace();
 		}
-		int[] bestMove = null;
-		int bestValue = Integer.MIN_VALUE;
-		int alpha = Integer.MIN_VALUE;
-		int beta =  Integer.MAX_VALUE;
-		for(int[] move : state.legalMoves()) {
-			numberOfExpansion++;
-			int value = MIN(state.successorState(move), alpha, beta, depth - 1);
-			alpha = Math.max(alpha, value);
-			if(value > bestValue) {
-				bestMove = move;
-				bestValue = value;
+		pondering = null;
+	}
+	
+	private String searchForBestNextAction(int[] lastmove) {
+		State state = new State(session.state);			// The searchers play moves on their own copies
+		Search search = session.searches[0];
+		int move;
+		long ponderNodes = 0;							// Searched by the main searcher before the opponent moved
+		if(pondering != null && java.util.Arrays.equals(lastmove, ponderMove)) {
+			// Ponder hit, the running search is already on this position, give it a deadline and some help
+			ponderNodes = search.numberOfExpansion;
+			session.time.setDeadline(startTime, session.playclock);
+			Future<?>[] running = startHelpers(state);
+			Future<?> solving = startSolver(state);
+			try {
+				move = pondering.get();
+			} catch(Exception e) {
+				throw new RuntimeException(e);
 			}
-			state.rewindState();
+			pondering = null;
+			stopHelpers(running);
+			join(solving);
+		} else {
+			stopPondering();								// Ponder miss, only the table entries are worth keeping
+			session.table.newSearch();
+			session.time.start(startTime, session.playclock);
+			Future<?>[] running = startHelpers(state);
+			Future<?> solving = startSolver(state);
+			move = search.iterativeDeepening(state, 1, session.expectedMove());
+			stopHelpers(running);
+			join(solving);
 		}
-		return bestMove;
+		if(session.solver != null && session.solver.winningMove(state) != 0)
+			move = session.solver.winningMove(state);		// Proven, better than any score
+		if(move == 0) {
+			int[] moves = new int[State.MAX_MOVES];
+			state.legalMoves(moves);
+			move = moves[0];								// Not even one root move was finished, play anything legal
+		}
+		recordStats(search, ponderNodes);
+		session.updatePrincipalVariation(move);
+		int[] action = state.unpackMove(move);
+		return "(move " + action[0] + " " + action[1] + " " + action[2] + " " + action[3] + ")";
 	}
 	
-	private int MAX(State state, int alpha, int beta, int depth) {
-		if(System.currentTimeMillis() - startTime >= playclock)
-			throw new OutOfTimeException();
-		else if(depth == 0) {
-			isCutOff = true;
-			return -state.eval();
+	private void recordStats(Search search, long ponderNodes) {
+		long nodes = 0, cutoffs = 0, firstMoveCutoffs = 0, tableProbes = 0, tableHits = 0;
+		for(Search searcher : session.searches) {
+			nodes += searcher.numberOfExpansion;
+			cutoffs += searcher.cutoffs;
+			firstMoveCutoffs += searcher.firstMoveCutoffs;
+			tableProbes += searcher.tableProbes;
+			tableHits += searcher.tableHits;
 		}
-		else if(state.isTerminalState())
-			return -state.eval();
-		int value = Integer.MIN_VALUE;
-		for(int[] move : state.legalMoves()) {
-			numberOfExpansion++;
-			value = Math.max(value, MIN(state.successorState(move), alpha, beta, depth - 1));
-			state.rewindState();
-			if(value >= beta)
-				return value;
-			alpha = Math.max(alpha, value);
+		telemetry.record(new SearchStats(nodes - ponderNodes, ponderNodes, System.currentTimeMillis() - startTime, session.playclock, search.completedDepth,
+				search.branchingFactor, cutoffs, firstMoveCutoffs, tableProbes, tableHits));
+	}
+	
+	private Future<?>[] startHelpers(final State state) {
+		Future<?>[] running = new Future<?>[session.searches.length];
+		for(int i = 1; i < running.length; i++) {
+			final Search helper = session.searches[i];
+			final State helperState = new State(state);
+			final int firstDepth = 1 + i % 2;				// Every other helper skips the first depth to spread the threads out
+			running[i] = helpers.submit(new Runnable() {
+				@Override
+				public void run() {
+					helper.iterativeDeepening(helperState, firstDepth, 0);
+				}
+			});
 		}
-		return value;
+		return running;
 	}
 	
-	private int MIN(State state, int alpha, int beta, int depth) {
-		if(System.currentTimeMillis() - startTime >= playclock)
-			throw new OutOfTimeException();
-		else if(depth == 0) {
-			isCutOff = true;
-			return state.eval();
+	/**
+	 * Starts the proof-number solver on the position if the game is near its end. It stops the
+	 * time manager itself when it proves a win.
+	 * @return the running solver, null if it was not started
+	 */
+	private Future<?> startSolver(final State state) {
+		if(session.solver == null || !ProofNumberSearch.isCandidate(state))
+			return null;
+		final State solverState = new State(state);
+		final ProofNumberSearch solver = session.solver;
+		return solverThread.submit(new Runnable() {
+			@Override
+			public void run() {
+				solver.solve(solverState);
+			}
+		});
+	}
+	
+	private static void join(Future<?> running) {
+		if(running == null)
+			return;
+		try {
+			running.get();
+		} catch(Exception e) {
+			e.printStackTrace();
 		}
-		else if(state.isTerminalState())
-			return state.eval();
-		int value = Integer.MAX_VALUE;
-		for(int[] move : state.legalMoves()) {
-			numberOfExpansion++;
-			value = Math.min(value, MAX(state.successorState(move), alpha, beta, depth - 1));
-			state.rewindState();
-			if(value <= alpha)
-				return value;
-			beta = Math.min(beta, value);
+	}
+	
+	private void stopHelpers(Future<?>[] running) {
+		session.time.stop();								// The main searcher is done, so are the helpers
+		for(int i = 1; i < running.length; i++) {
+			try {
+				running[i].get();
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
 		}
-		return value;
 	}
 }
@@ -0,0 +1,176 @@
+package breakthrough;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays two agents against each other in process, many games at once, and reports how they compare.
+ * Usage: Arena width height games parallelGames playclock optionsA optionsB
+ * <p>
+ * The options of each side are SearchConfig settings separated by commas, for example
+ * "threads=1,hash=16,ponder=false" or "nodes=50000,ponder=false" for a node budget that does
+ * not depend on the load of the machine, or "depth=8,mode=mtdf,ponder=false" to compare the
+ * nodes the search modes need for the same depth. The sides swap colors every game. Every game
+ * thread keeps its own pair of agents and reuses them from game to game, like a player
+ * between matches.
+ */
+public class Arena {
+
+	private static final int WIN = 2, DRAW = 1, LOSS = 0;	// Result of a game for side A
+
+	private final int width, height, playclock;
+	private final SearchConfig[] configs;
+	private final ThreadLocal<Agent[]> agents;
+
+	/**
+	 * Totals of one side, updated by the game threads
+	 */
+	private static class Totals {
+		long moves, depth, nodes, millis;
+		int lateMoves;									// Moves that took longer than the playclock
+
+		synchronized void add(Agent agent, long millis, int playclock) {
+			moves++;
+			this.millis += millis;
+			if(millis > playclock * 1000L)
+				lateMoves++;
+			SearchStats last = agent instanceof SearchStatistics ? ((SearchStatistics) agent).telemetry().last() : null;
+			if(last != null) {
+				depth += last.depth;
+				nodes += last.nodes;
+			}
+		}
+	}
+
+	private final Totals[] totals = {new Totals(), new Totals()};
+
+	public Arena(int width, int height, int playclock, SearchConfig configA, SearchConfig configB) {
+		this.width = width;
+		this.height = height;
+		this.playclock = playclock;
+		configs = new SearchConfig[] {configA, configB};
+		agents = new ThreadLocal<Agent[]>() {
+			@Override
+			protected Agent[] initialValue() {
+				return new Agent[] {configs[0].createAgent(), configs[1].createAgent()};
+			}
+		};
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 7) {
+			System.err.println("Usage: Arena width height games parallelGames playclock optionsA optionsB");
+			System.exit(1);
+		}
+		Arena arena = new Arena(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[4]), parseOptions(args[5]), parseOptions(args[6]));
+		arena.run(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+		System.exit(0);										// The agents keep daemon threads around
+	}
+
+	private static SearchConfig parseOptions(String options) {
+		return SearchConfig.parse(options.isEmpty() ? new String[0] : options.split(","), 0);
+	}
+
+	public void run(int games, int parallelGames) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(parallelGames);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for(int i = 0; i < games; i++) {
+			final boolean isAWhite = i % 2 == 0;
+			results.add(pool.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return play(isAWhite);
+				}
+			}));
+		}
+		int[] count = new int[3];
+		for(Future<Integer> result : results)
+			count[result.get()]++;
+		pool.shutdown();
+		report(count[WIN], count[DRAW], count[LOSS]);
+	}
+
+	/**
+	 * Plays one game the way GamePlayer would: both agents see every move, the one not to move answers NOOP
+	 * @return the result for side A
+	 */
+	private int play(boolean isAWhite) {
+		Agent[] pair = agents.get();
+		Agent white = pair[isAWhite ? 0 : 1], black = pair[isAWhite ? 1 : 0];
+		Totals whiteTotals = totals[isAWhite ? 0 : 1], blackTotals = totals[isAWhite ? 1 : 0];
+		white.init("white", width, height, playclock);
+		black.init("black", width, height, playclock);
+		State state = State.startPosition(width, height);
+		int[] moves = new int[State.MAX_MOVES];
+		int[] lastMove = null;
+		int whiteResult;
+		while(true) {
+			if(state.isTerminal) {
+				whiteResult = state.isWhiteTurn ? LOSS : WIN;			// The player who just moved got through
+				break;
+			}
+			int count = state.legalMoves(moves);
+			if(count == 0) {
+				whiteResult = DRAW;										// Stuck, a draw by the rules of the game
+				break;
+			}
+			Agent mover = state.isWhiteTurn ? white : black, waiter = state.isWhiteTurn ? black : white;
+			waiter.nextAction(lastMove);
+			long start = System.currentTimeMillis();
+			String action = mover.nextAction(lastMove);
+			(state.isWhiteTurn ? whiteTotals : blackTotals).add(mover, System.currentTimeMillis() - start, playclock);
+			lastMove = parseMove(action);
+			boolean isLegal = false;
+			for(int i = 0; i < count && lastMove != null; i++)
+				isLegal |= Arrays.equals(state.unpackMove(moves[i]), lastMove);
+			if(!isLegal) {
+				System.err.println("Illegal move " + action + " by " + (state.isWhiteTurn ? "white" : "black"));
+				whiteResult = state.isWhiteTurn ? LOSS : WIN;
+				break;
+			}
+			state.successorState(lastMove);
+		}
+		white.cleanup();
+		black.cleanup();
+		return isAWhite ? whiteResult : WIN - whiteResult;
+	}
+
+	/**
+	 * @return {x1, y1, x2, y2} of an action like "(move 1 2 1 3)", null if it is not a move
+	 */
+	private static int[] parseMove(String action) {
+		String[] parts = action.replace("(", " ").replace(")", " ").trim().split("\\s+");
+		if(parts.length != 5 || !parts[0].equals("move"))
+			return null;
+		int[] move = new int[4];
+		for(int i = 0; i < 4; i++)
+			move[i] = Integer.parseInt(parts[i + 1]);
+		return move;
+	}
+
+	private void report(int wins, int draws, int losses) {
+		int games = wins + draws + losses;
+		double score = (wins + 0.5 * draws) / games;
+		// Standard error of the mean score, from the spread of the game results
+		double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+		double margin = 1.96 * Math.sqrt(variance / games);
+		System.out.printf("Games: %d, A wins %d, B wins %d, draws %d, A scores %.1f%%%n", games, wins, losses, draws, 100 * score);
+		System.out.printf("Elo difference: %+.1f (95%% interval %+.1f to %+.1f)%n", elo(score), elo(score - margin), elo(score + margin));
+		String[] names = {"A", "B"};
+		for(int side = 0; side < 2; side++) {
+			Totals t = totals[side];
+			System.out.printf("%s: %d moves, average depth %.2f, %.0f nodes per move, %.0f nodes/s, %d over the playclock%n", names[side], t.moves,
+					(double) t.depth / Math.max(1, t.moves), (double) t.nodes / Math.max(1, t.moves), 1000.0 * t.nodes / Math.max(1, t.millis), t.lateMoves);
+		}
+	}
+
+	private static double elo(double score) {
+		score = Math.min(Math.max(score, 1e-3), 1 - 1e-3);		// A perfect score has no finite Elo difference
+		return -400 * Math.log10(1 / score - 1);
+	}
+}
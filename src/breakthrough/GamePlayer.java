@@ -4,8 +4,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Properties;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 public class GamePlayer extends NanoHTTPD {
@@ -21,70 +19,30 @@ public class GamePlayer extends NanoHTTPD {
 	/**
 	 * this method is called when a new match begins
 	 */
-	protected void commandStart(String msg) {
+	protected void commandStart(KifMessage msg) {
 		// msg="(START <MATCH ID> <ROLE> <GAME DESCRIPTION> <STARTCLOCK> <PLAYCLOCK>)
 		// e.g. msg="(START tictactoe1 white ((role white) (role black) ...) 1800 120)" means:
 		//       - the current match is called "match0815"
 		//       - your role is "white",
 		//       - after at most 1800 seconds, you have to return from the commandStart method
 		//       - for each move you have 120 seconds
-		Matcher m=Pattern.compile("\\s*\\(\\s*start\\s+([^\\s]+)\\s+([^\\s]+)(.*)\\s([0-9]+)\\s+([0-9]+)\\s*\\)\\s*\\z", Pattern.DOTALL).matcher(msg);
-		try {
-			String role;
-			int playclock, width, height;
-			if (m.lookingAt()) {
-				role = m.group(2);
-				String gameDescription = m.group(3);
-				playclock = Integer.parseInt(m.group(5));
-				m=Pattern.compile("\\(\\s*width\\s+([0-9]+)\\s*\\)").matcher(gameDescription);
-				if(m.find()){
-					width = Integer.parseInt(m.group(1));
-				} else {
-					throw new Exception("Board width not found in game rules!");
-				}
-				m=Pattern.compile("\\(\\s*height\\s+([0-9]+)\\s*\\)").matcher(gameDescription);
-				if(m.find()){
-					height = Integer.parseInt(m.group(1));
-				} else {
-					throw new Exception("Board height not found in game rules!");
-				}
-				System.out.println("role: " + role + ", board: " + width + "x" + height + ", playclock: " + playclock);
-			} else {
-				throw new Exception("unrecognized message format:" + msg);
-			}
-			agent.init(role, width, height, playclock);
-		} catch(Exception e) {
-			System.err.println("Can not parse start message: " + e);
-			System.exit(-1);
-		}
+		System.out.println("role: " + msg.role + ", board: " + msg.width + "x" + msg.height + ", playclock: " + msg.playclock);
+		agent.init(msg.role, msg.width, msg.height, msg.playclock);
 	}
 
 	/**
 	 * this method is called once for each move
 	 * @return the move of this player
 	 */
-	protected String commandPlay(String msg){
+	protected String commandPlay(KifMessage msg){
 		// msg="(PLAY <MATCHID> <LASTMOVES>)"
-		int[] coord = null;
-		try{
-			Matcher m=Pattern.compile("\\(\\s*move\\s+([0-9]+)\\s+([0-9]+)\\s+([0-9]+)\\s+([0-9]+)\\s*\\)", Pattern.DOTALL).matcher(msg);
-			if (m.find()) {
-				coord = new int[4];
-				for (int i = 0; i<4; i++) {
-					coord[i] = Integer.parseInt(m.group(i+1)); 
-				}
-			}
-		}catch(Exception ex){
-			System.err.println("Pattern to detect moves does not match!");
-			ex.printStackTrace();
-		}
-		return agent.nextAction(coord);
+		return agent.nextAction(msg.lastMove);
 	}
 
 	/**
 	 * this method is called if the match is over
 	 */
-	protected void commandStop(String msg){
+	protected void commandStop(KifMessage msg){
 		// msg="(STOP <MATCH ID> <JOINT MOVE>)
 		System.out.println("game over");
 		agent.cleanup();
@@ -93,7 +51,7 @@ public class GamePlayer extends NanoHTTPD {
 	/**
 	 * this method is called if the match is aborted
 	 */
-	protected void commandAbort(String msg){
+	protected void commandAbort(KifMessage msg){
 		// msg="(STOP <MATCH ID> <JOINT MOVE>)
 		System.out.println("match aborted");
 		agent.cleanup();
@@ -101,28 +59,28 @@ public class GamePlayer extends NanoHTTPD {
 
 	public Response serve( String uri, String method, Properties header, Properties parms, String data )
 	{
+		if(method.equalsIgnoreCase("GET"))
+			return serveMetrics(uri, header, parms);
 		try{
 			String response_string=null;
 			if(data!=null){
-				data=data.toLowerCase();
 				System.out.print(dateFormat.format(Calendar.getInstance().getTime()));
 				System.out.println(" Command: " + data);
-				String command=getCommand(data);
-				if(command==null){
-					throw(new IllegalArgumentException("Unknown message format"));
-				}else if(command.equals("start")){
+				KifMessage msg=KifMessage.parse(data);
+				String command=msg.command;
+				if(command.equals(KifMessage.START)){
 					response_string="ready";
-					commandStart(data);
-				}else if(command.equals("play")){
-					response_string=commandPlay(data);
+					commandStart(msg);
+				}else if(command.equals(KifMessage.PLAY)){
+					response_string=commandPlay(msg);
 /*				}else if(command.equals("replay")){
-					response_string=commandReplay(data);*/
-				}else if(command.equals("stop")){
+					response_string=commandReplay(msg);*/
+				}else if(command.equals(KifMessage.STOP)){
 					response_string="done";
-					commandStop(data);
-				}else if(command.equals("abort")){
+					commandStop(msg);
+				}else if(command.equals(KifMessage.ABORT)){
 					response_string="done";
-					commandAbort(data);
+					commandAbort(msg);
 				}else{
 					throw(new IllegalArgumentException("Unknown command:"+command));
 				}
@@ -140,18 +98,18 @@ public class GamePlayer extends NanoHTTPD {
 		}
 	}
 
-	private String getCommand(String msg){
-		String cmd=null;
-		try{
-			Matcher m=Pattern.compile("\\s*\\(\\s*([^\\s]*)\\s").matcher(msg);
-			if(m.lookingAt()){
-				cmd=m.group(1);
-			}
-		}catch(Exception ex){
-			System.err.println("Pattern to extract command did not match!");
-			ex.printStackTrace();
-		}
-		return cmd;
+	/**
+	 * GET /metrics returns the search statistics of the recent moves as JSON,
+	 * or in the Prometheus text format for ?format=prometheus or a text/plain Accept header
+	 */
+	private Response serveMetrics(String uri, Properties header, Properties parms) {
+		if(!uri.equals("/metrics") || !(agent instanceof SearchStatistics))
+			return new Response( HTTP_NOTFOUND, MIME_PLAINTEXT, "Not found" );
+		SearchTelemetry telemetry = ((SearchStatistics) agent).telemetry();
+		String accept = header.getProperty("Accept", header.getProperty("accept", ""));
+		if("prometheus".equals(parms.getProperty("format")) || accept.contains("text/plain"))
+			return new Response( HTTP_OK, "text/plain; version=0.0.4", telemetry.toPrometheus() );
+		return new Response( HTTP_OK, "application/json", telemetry.toJson() );
 	}
 
 	public void waitForExit(){
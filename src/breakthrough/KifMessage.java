@@ -0,0 +1,252 @@
+package breakthrough;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A message of the game controller, read from its KIF S-expression in one pass:
+ * (START id role description startclock playclock), (PLAY id jointmove), (STOP id jointmove)
+ * or (ABORT id). Keywords are matched without regard to case, so the message is never copied
+ * to lowercase, and only the match id and the role become strings.
+ * <p>
+ * The game description of START is most of the traffic. Only the (width N) and (height N)
+ * facts are taken out of it, and they are cached by match id, so a START sent again for the
+ * same match just finds the clocks at the end of the message.
+ */
+public class KifMessage {
+
+	public static final String START = "start", PLAY = "play", STOP = "stop", ABORT = "abort";
+	private static final String[] COMMANDS = {START, PLAY, STOP, ABORT};
+	private static final int CACHED_MATCHES = 16;
+	private static final Map<String, int[]> boards = Collections.synchronizedMap(new LinkedHashMap<String, int[]>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+			return size() > CACHED_MATCHES;
+		}
+	});
+
+	public final String message;		// As it was received
+	public String command;				// One of the constants above, or the unknown command in lowercase
+	public String matchId;
+	public String role;					// In lowercase, START only
+	public int startclock, playclock;	// Seconds, START only
+	public int width, height;			// Of the board, START only
+	public int[] lastMove;				// x1 y1 x2 y2 of the move in the joint move of PLAY or STOP, null if there is none
+	private int pos;					// Next character to read
+
+	private KifMessage(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the message is not one the controller sends
+	 */
+	public static KifMessage parse(String message) {
+		KifMessage parsed = new KifMessage(message);
+		parsed.parse();
+		return parsed;
+	}
+
+	private void parse() {
+		expect('(');
+		command = command();
+		if(command.equals(ABORT) || command.equals(START) || command.equals(PLAY) || command.equals(STOP))
+			matchId = atom();
+		if(command.equals(START)) {
+			role = atom().toLowerCase();
+			readStart();
+		}
+		else if(command.equals(PLAY) || command.equals(STOP))
+			lastMove = readJointMove();
+	}
+
+	/**
+	 * Reads the clocks backwards from the end of the message, then the board size out of the
+	 * description in between unless the match is cached
+	 */
+	private void readStart() {
+		int end = message.length() - 1;
+		end = skipSpaceBackwards(end);
+		if(end < pos || message.charAt(end) != ')')
+			throw error("')' expected at the end");
+		int digits = skipSpaceBackwards(end - 1);
+		end = skipDigitsBackwards(digits);
+		playclock = number(end + 1, digits + 1);
+		digits = skipSpaceBackwards(end);
+		end = skipDigitsBackwards(digits);
+		startclock = number(end + 1, digits + 1);
+		int[] board = boards.get(matchId);
+		if(board == null) {
+			board = readBoard(pos, end + 1);
+			boards.put(matchId, board);
+		}
+		width = board[0];
+		height = board[1];
+	}
+
+	/**
+	 * @return width and height from the facts (width N) and (height N) between from and to
+	 */
+	private int[] readBoard(int from, int to) {
+		int[] board = {-1, -1};
+		for(int i = from; i < to; i++) {
+			if(message.charAt(i) != '(')
+				continue;
+			int value = fact(i + 1, "width");
+			if(value >= 0)
+				board[0] = value;
+			value = fact(i + 1, "height");
+			if(value >= 0)
+				board[1] = value;
+		}
+		if(board[0] < 0)
+			throw error("Board width not found in game rules");
+		if(board[1] < 0)
+			throw error("Board height not found in game rules");
+		return board;
+	}
+
+	/**
+	 * @return N if the list starting after the '(' at i is (name N), -1 otherwise, rules like (width ?w) included
+	 */
+	private int fact(int i, String name) {
+		i = skipSpace(i);
+		if(!message.regionMatches(true, i, name, 0, name.length()))
+			return -1;
+		i += name.length();
+		int start = skipSpace(i);
+		if(start == i)
+			return -1;								// Only a prefix of the atom
+		int end = skipDigits(start);
+		int close = skipSpace(end);
+		if(end == start || close == message.length() || message.charAt(close) != ')')
+			return -1;
+		return number(start, end);
+	}
+
+	/**
+	 * Reads NIL or a list of moves, one per role, where all but the mover's are noop
+	 * @return the first (move x1 y1 x2 y2) of the list, null if there is none
+	 */
+	private int[] readJointMove() {
+		pos = skipSpace(pos);
+		if(peek() != '(') {
+			atom();										// NIL, no move has been played yet
+			return null;
+		}
+		pos++;
+		int[] move = null;
+		while((pos = skipSpace(pos)) < message.length() && message.charAt(pos) != ')') {
+			if(message.charAt(pos) != '(') {
+				atom();									// noop
+				continue;
+			}
+			pos++;
+			String head = atom();
+			if(!head.equalsIgnoreCase("move"))
+				throw error("Unknown move " + head);
+			int[] coordinates = new int[4];
+			for(int i = 0; i < 4; i++) {
+				pos = skipSpace(pos);
+				int end = skipDigits(pos);
+				coordinates[i] = number(pos, end);
+				pos = end;
+			}
+			expect(')');
+			if(move == null)
+				move = coordinates;
+		}
+		expect(')');
+		return move;
+	}
+
+	/**
+	 * @return the constant of the command at pos, without creating a string for it
+	 */
+	private String command() {
+		pos = skipSpace(pos);
+		int end = atomEnd(pos);
+		for(String command : COMMANDS) {
+			if(end - pos == command.length() && message.regionMatches(true, pos, command, 0, command.length())) {
+				pos = end;
+				return command;
+			}
+		}
+		String unknown = message.substring(pos, end).toLowerCase();
+		pos = end;
+		return unknown;
+	}
+
+	private String atom() {
+		pos = skipSpace(pos);
+		int end = atomEnd(pos);
+		if(end == pos)
+			throw error("Atom expected");
+		String atom = message.substring(pos, end);
+		pos = end;
+		return atom;
+	}
+
+	private void expect(char c) {
+		pos = skipSpace(pos);
+		if(peek() != c)
+			throw error("'" + c + "' expected");
+		pos++;
+	}
+
+	private char peek() {
+		return pos < message.length() ? message.charAt(pos) : 0;
+	}
+
+	private int number(int start, int end) {
+		if(end == start || end - start > 9)
+			throw error("Number expected");
+		int value = 0;
+		for(int i = start; i < end; i++)
+			value = value * 10 + message.charAt(i) - '0';
+		return value;
+	}
+
+	private int atomEnd(int i) {
+		while(i < message.length()) {
+			char c = message.charAt(i);
+			if(c == '(' || c == ')' || Character.isWhitespace(c))
+				break;
+			i++;
+		}
+		return i;
+	}
+
+	private int skipSpace(int i) {
+		while(i < message.length() && Character.isWhitespace(message.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private int skipDigits(int i) {
+		while(i < message.length() && isDigit(message.charAt(i)))
+			i++;
+		return i;
+	}
+
+	private int skipSpaceBackwards(int i) {
+		while(i >= pos && Character.isWhitespace(message.charAt(i)))
+			i--;
+		return i;
+	}
+
+	private int skipDigitsBackwards(int i) {
+		while(i >= pos && isDigit(message.charAt(i)))
+			i--;
+		return i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private IllegalArgumentException error(String reason) {
+		return new IllegalArgumentException(reason + " at " + pos + " of message: " + message);
+	}
+}
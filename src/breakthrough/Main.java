@@ -4,12 +4,12 @@ public class Main {
 	
 	/**
 	 * starts the game player and waits for messages from the game master <br>
-	 * Command line options: [port]
+	 * Command line options: [port] [option=value ...], see SearchConfig for the options
 	 */
 	public static void main(String[] args){
 		try{
 			// TODO: put in your agent here
-			Agent agent = new AlphaBetaAgent();
+			Agent agent = SearchConfig.parse(args, 1).createAgent();
 
 			int port=4001;
 			if(args.length>=1){
@@ -0,0 +1,98 @@
+package breakthrough;
+
+import java.io.IOException;
+
+/**
+ * Everything AlphaBetaAgent keeps for the length of one match: the position, which both
+ * players' moves are applied to as they come in, the transposition table, the searchers
+ * with their history tables, and the principal variation of the last search.
+ * Created in init() and dropped in cleanup().
+ */
+public class MatchSession {
+
+	public final boolean isWhite;		// Our color
+	public final int playclock;			// Milliseconds we have for each move
+	public final State state;			// The current position of the match, never searched directly
+	public final TranspositionTable table;
+	public final TimeManager time;		// Shared by the searchers, stops them all at once
+	public final Tablebase tablebase;	// Exact values of the endgames, null if there is none for this board
+	public final ProofNumberSearch solver;	// Proves wins and losses near the end of the game, null if it is turned off
+	public final Search[] searches;		// The main searcher followed by the lazy SMP helpers
+	private final int[] principalVariation = new int[MoveOrdering.MAX_PLY];
+	private int pvLength;
+	private int pvIndex;				// How much of the principal variation has been played out
+
+	public MatchSession(String role, int width, int height, int playclock, SearchConfig config) {
+		isWhite = role.equals("white");
+		this.playclock = playclock;
+		state = State.startPosition(width, height);
+		table = new TranspositionTable(config.hashMegabytes);
+		time = new TimeManager(config.marginMillis, config.nodes, config.depth);
+		tablebase = openTablebase(config.tablebase, width, height);
+		solver = config.solver ? new ProofNumberSearch(time) : null;
+		searches = new Search[config.threads];
+		for(int i = 0; i < searches.length; i++)
+			searches[i] = new Search(i, table, time, tablebase, solver, config);
+	}
+
+	private static Tablebase openTablebase(String path, int width, int height) {
+		if(path == null)
+			return null;
+		try {
+			Tablebase tablebase = new Tablebase(path);
+			if(tablebase.width == width && tablebase.height == height)
+				return tablebase;
+		} catch(IOException e) {
+			e.printStackTrace();							// Play on without it
+		}
+		return null;
+	}
+
+	public boolean isMyTurn() {
+		return state.isWhiteTurn == isWhite;
+	}
+
+	/**
+	 * Applies a move {x1, y1, x2, y2} made by either player
+	 */
+	public void play(int[] move) {
+		int packed = state.packMove(move);
+		if(pvIndex < pvLength && packed == principalVariation[pvIndex])
+			pvIndex++;											// Still following the line we expected
+		else
+			pvLength = pvIndex = 0;
+		state.successorState(packed);
+	}
+
+	/**
+	 * @return the move the last search expects in the current position, 0 if the game left its principal variation
+	 */
+	public int expectedMove() {
+		return pvIndex < pvLength ? principalVariation[pvIndex] : 0;
+	}
+
+	/**
+	 * Remembers the line starting with the chosen move, as far as the table can follow it
+	 */
+	public void updatePrincipalVariation(int bestMove) {
+		State line = new State(state);
+		int[] moves = new int[State.MAX_MOVES];
+		pvIndex = 0;
+		pvLength = 0;
+		int move = bestMove;
+		while(move != 0 && pvLength < principalVariation.length) {
+			principalVariation[pvLength++] = move;
+			line.successorState(move);
+			if(line.isTerminalState())
+				break;
+			long entry = table.probe(line.getZobristKey());
+			int hashMove = entry == 0 ? 0 : TranspositionTable.move(entry);
+			move = 0;
+			int count = line.legalMoves(moves);
+			for(int i = 0; i < count; i++) {
+				if(moves[i] == hashMove)
+					move = hashMove;								// The table could hold a colliding key, only follow legal moves
+			}
+		}
+	}
+}
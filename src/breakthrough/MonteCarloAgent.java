@@ -0,0 +1,229 @@
+package breakthrough;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Monte Carlo tree search with UCT selection and random playouts.
+ * All threads grow the same tree (tree parallelism), virtual loss keeps them on different
+ * lines. The tree lives in a preallocated MonteCarloTree, and the subtree below the moves
+ * actually played is kept from one turn to the next.
+ * <p>
+ * Light playouts pick uniformly among the legal moves. Heavy playouts (the default) take a
+ * move to the goal when there is one, and answer a pawn about to reach the goal with a
+ * capture, since nothing else can stop it.
+ */
+public class MonteCarloAgent implements Agent, SearchStatistics {
+
+	private static final double EXPLORATION = 1.0;	// Weight of the UCT exploration term, the scores are between 0 and 1
+	private static final int EXPAND_VISITS = 2;		// Playouts through a leaf before it gets children
+	private static final int WHITE_WINS = 1, DRAW = 0, BLACK_WINS = -1;
+
+	private final SearchConfig config;
+	private final SearchTelemetry telemetry = new SearchTelemetry();
+	private final boolean isHeavy;
+	private ExecutorService workers;
+	private MonteCarloTree tree;
+	private TimeManager time;
+	private State state;						// The current position of the match, the root of the tree
+	private boolean isWhite;
+	private int playclock;						// Milliseconds we have for each move
+
+	public MonteCarloAgent(SearchConfig config) {
+		this.config = config;
+		isHeavy = config.playout.equals("heavy");
+	}
+
+	@Override
+	public void init(String role, int width, int height, int playclock) {
+		isWhite = role.equals("white");
+		this.playclock = playclock * 1000;
+		state = State.startPosition(width, height);
+		time = new TimeManager(config.marginMillis, config.nodes, config.depth);
+		if(tree == null) {
+			tree = new MonteCarloTree(config.hashMegabytes);
+			if(config.threads > 1) {
+				workers = Executors.newFixedThreadPool(config.threads - 1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "playouts");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+		else
+			tree.clear();
+	}
+
+	@Override
+	public String nextAction(int[] lastmove) {
+		long startTime = System.currentTimeMillis();
+		if(lastmove != null) {
+			int move = state.packMove(lastmove);
+			tree.advance(move);								// Our own moves come back here too
+			state.successorState(move);
+		}
+		if(state.isWhiteTurn != isWhite)
+			return "NOOP";
+		int move = search(startTime);
+		int[] action = state.unpackMove(move);
+		return "(move " + action[0] + " " + action[1] + " " + action[2] + " " + action[3] + ")";
+	}
+
+	@Override
+	public void cleanup() {
+	}
+
+	@Override
+	public SearchTelemetry telemetry() {
+		return telemetry;
+	}
+
+	private int search(long startTime) {
+		int[] moves = new int[State.MAX_MOVES];
+		int count = state.legalMoves(moves);
+		if(tree.firstChild(0) == MonteCarloTree.UNEXPANDED && tree.tryExpand(0))
+			tree.expand(0, moves, count);					// So there is a move to play however little time there is
+		time.start(startTime, playclock);
+		Playouts[] running = new Playouts[config.threads];
+		Future<?>[] futures = new Future<?>[running.length];
+		for(int i = 0; i < running.length; i++)
+			running[i] = new Playouts(new State(state), i == 0);
+		for(int i = 1; i < running.length; i++)
+			futures[i] = workers.submit(running[i]);
+		running[0].call();
+		time.stop();
+		long nodes = running[0].nodes;
+		int depth = running[0].maxDepth;
+		for(int i = 1; i < running.length; i++) {
+			try {
+				futures[i].get();
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+			nodes += running[i].nodes;
+			depth = Math.max(depth, running[i].maxDepth);
+		}
+		int best = tree.mostVisitedChild();
+		int move = best == 0 ? moves[0] : tree.move(best);	// The tree was full before the root got children
+		telemetry.record(new SearchStats(nodes, 0, System.currentTimeMillis() - startTime, playclock, depth, 0, 0, 0, 0, 0));
+		return move;
+	}
+
+	/**
+	 * One thread of the search, it runs playouts from the root until the time manager stops it
+	 */
+	private class Playouts implements Callable<Void> {
+		private final State state;					// Own copy of the root position
+		private final int[] moves = new int[State.MAX_MOVES];
+		private final int[] path;					// Nodes from the root down to the leaf
+		private final boolean isMain;				// Runs on the calling thread, its nodes count against the limit
+		long nodes;									// Moves made, in the tree and in the playouts
+		int maxDepth;								// Deepest leaf reached
+
+		Playouts(State state, boolean isMain) {
+			this.state = state;
+			this.isMain = isMain;
+			path = new int[4 * state.size + 1];		// A game can't be longer than the moves State has room for
+		}
+
+		@Override
+		public Void call() {
+			long nextPoll = 0;
+			while(!time.isStopped()) {
+				playout();
+				if(nodes >= nextPoll) {
+					time.poll(nodes, isMain);
+					nextPoll = nodes + TimeManager.POLL_MASK + 1;
+				}
+			}
+			return null;
+		}
+
+		private void playout() {
+			int node = 0, depth = 0;
+			path[0] = 0;
+			tree.addVisit(0);
+			// Selection, down to a leaf of the tree or the end of the game
+			while(!state.isTerminal && tree.firstChild(node) > 0 && tree.childCount(node) > 0) {
+				node = descend(node);
+				path[++depth] = node;
+			}
+			// Expansion, once a leaf has seen a few playouts
+			if(!state.isTerminal && tree.visits(node) > EXPAND_VISITS && tree.tryExpand(node)) {
+				int count = state.legalMoves(moves);
+				if(tree.expand(node, moves, count) && count > 0) {
+					node = descend(node);
+					path[++depth] = node;
+				}
+			}
+			maxDepth = Math.max(maxDepth, depth);
+			// Simulation
+			int moveCount = 0;
+			int result;
+			while(true) {
+				if(state.isTerminal) {
+					result = state.isWhiteTurn ? BLACK_WINS : WHITE_WINS;		// The player who just moved got through
+					break;
+				}
+				int count;
+				if(!isHeavy)
+					count = state.legalMoves(moves);
+				else if(state.threatensWin(state.isWhiteTurn)) {
+					result = state.isWhiteTurn ? WHITE_WINS : BLACK_WINS;		// Gets through on this move
+					break;
+				}
+				else if(state.threatensWin(!state.isWhiteTurn)) {
+					count = captures();
+					if(count == 0) {
+						result = !state.hasLegalMoves() ? DRAW : state.isWhiteTurn ? BLACK_WINS : WHITE_WINS;	// Nothing stops the opponent
+						break;
+					}
+				}
+				else
+					count = state.legalMoves(moves);
+				if(count == 0) {
+					result = DRAW;												// Stuck
+					break;
+				}
+				state.successorState(moves[ThreadLocalRandom.current().nextInt(count)]);
+				moveCount++;
+			}
+			nodes += moveCount;
+			for(int i = 0; i < moveCount; i++)
+				state.rewindState();
+			// Backpropagation, each node is scored for the player who moved into it
+			for(int i = depth; i >= 1; i--) {
+				boolean isWhiteMove = !state.isWhiteTurn;
+				tree.addScore(path[i], result == DRAW ? 1 : (result == WHITE_WINS) == isWhiteMove ? 2 : 0);
+				state.rewindState();
+			}
+		}
+
+		private int descend(int node) {
+			int child = tree.select(node, EXPLORATION);
+			tree.addVisit(child);
+			state.successorState(tree.move(child));
+			nodes++;
+			return child;
+		}
+
+		/**
+		 * Fills moves with the captures of the player to move
+		 * @return the number of captures
+		 */
+		private int captures() {
+			int count = state.forcingMoves(moves);
+			int captures = 0;
+			while(captures < count && (moves[captures] & State.CAPTURE) != 0)
+				captures++;												// Captures come first
+			return captures;
+		}
+	}
+}
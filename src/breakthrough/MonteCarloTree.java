@@ -0,0 +1,224 @@
+package breakthrough;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The nodes of a Monte Carlo search tree, preallocated in flat arrays so a search allocates nothing.
+ * Node 0 is the root. The children of a node are stored next to each other, firstChild gives
+ * the first of them and childCount how many there are. Several threads grow the tree at once:
+ * a node is expanded by the one thread that wins the compare and set on its firstChild, and
+ * the visits and scores are updated atomically.
+ * <p>
+ * Scores are in half points for the player who made the move into the node: 2 for a win,
+ * 1 for a draw. A thread adds the visit on its way down and the score on its way back up, so
+ * until then the visit counts as a loss and keeps the other threads off the same line
+ * (virtual loss).
+ * <p>
+ * To keep the subtree of a move that was played, it is copied breadth first to a second set of
+ * arrays, which then become the tree, the way a copying garbage collector does it.
+ */
+public class MonteCarloTree {
+
+	public static final int UNEXPANDED = 0;		// firstChild of a leaf, the root is at 0 so no child can be
+	public static final int EXPANDING = -1;		// firstChild while a thread is adding the children
+	private static final int NODE_BYTES = 2 * 17 + 4;	// A node in both sets of arrays and in the copy queue
+
+	/**
+	 * One set of node arrays
+	 */
+	private static class Nodes {
+		final int[] move;							// Packed move leading to the node
+		final byte[] childCount;
+		final AtomicIntegerArray firstChild;
+		final AtomicIntegerArray visits;
+		final AtomicIntegerArray score;
+
+		Nodes(int capacity) {
+			move = new int[capacity];
+			childCount = new byte[capacity];
+			firstChild = new AtomicIntegerArray(capacity);
+			visits = new AtomicIntegerArray(capacity);
+			score = new AtomicIntegerArray(capacity);
+		}
+	}
+
+	public final int capacity;
+	private Nodes nodes, spare;
+	private final int[] origin;						// Node of the old tree each copied node came from
+	private final AtomicInteger size = new AtomicInteger();
+	private volatile boolean isFull;
+
+	public MonteCarloTree(int megabytes) {
+		capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1024, ((long) megabytes << 20) / NODE_BYTES));
+		nodes = new Nodes(capacity);
+		spare = new Nodes(capacity);
+		origin = new int[capacity];
+		clear();
+	}
+
+	/**
+	 * Drops every node but a fresh root
+	 */
+	public void clear() {
+		nodes.move[0] = 0;
+		nodes.firstChild.set(0, UNEXPANDED);
+		nodes.visits.set(0, 0);
+		nodes.score.set(0, 0);
+		size.set(1);
+		isFull = false;
+	}
+
+	public int size() {
+		return size.get();
+	}
+
+	public int move(int node) {
+		return nodes.move[node];
+	}
+
+	public int firstChild(int node) {
+		return nodes.firstChild.get(node);
+	}
+
+	public int childCount(int node) {
+		return nodes.childCount[node];
+	}
+
+	public int visits(int node) {
+		return nodes.visits.get(node);
+	}
+
+	public int score(int node) {
+		return nodes.score.get(node);
+	}
+
+	/**
+	 * Counts a thread passing through the node, a loss until addScore is called
+	 */
+	public void addVisit(int node) {
+		nodes.visits.incrementAndGet(node);
+	}
+
+	public void addScore(int node, int halfPoints) {
+		if(halfPoints != 0)
+			nodes.score.addAndGet(node, halfPoints);
+	}
+
+	/**
+	 * @return true if the calling thread gets to expand the node, it then has to call expand
+	 */
+	public boolean tryExpand(int node) {
+		return !isFull && nodes.firstChild.get(node) == UNEXPANDED && nodes.firstChild.compareAndSet(node, UNEXPANDED, EXPANDING);
+	}
+
+	/**
+	 * Adds a child for each move, the node stays a leaf if the tree is full
+	 * @return true if the children were added
+	 */
+	public boolean expand(int node, int[] moves, int count) {
+		int first;
+		do {
+			first = size.get();
+			if(first + count > capacity) {
+				isFull = true;
+				nodes.firstChild.set(node, UNEXPANDED);
+				return false;
+			}
+		} while(!size.compareAndSet(first, first + count));
+		for(int i = 0; i < count; i++) {
+			nodes.move[first + i] = moves[i];
+			nodes.firstChild.set(first + i, UNEXPANDED);
+			nodes.visits.set(first + i, 0);
+			nodes.score.set(first + i, 0);
+		}
+		nodes.childCount[node] = (byte) count;
+		nodes.firstChild.set(node, first);			// Publishes the children to the other threads
+		return true;
+	}
+
+	/**
+	 * UCT: the child with the best mean score plus an exploration bonus for the ones visited least.
+	 * A child nobody has been through yet is taken right away.
+	 * @return the selected child, the node has to be expanded and have children
+	 */
+	public int select(int node, double exploration) {
+		int first = nodes.firstChild.get(node), count = nodes.childCount[node];
+		double logVisits = Math.log(Math.max(1, nodes.visits.get(node)));
+		int best = first;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for(int child = first; child < first + count; child++) {
+			int visits = nodes.visits.get(child);
+			if(visits == 0)
+				return child;
+			double value = nodes.score.get(child) / (2.0 * visits) + exploration * Math.sqrt(logVisits / visits);
+			if(value > bestValue) {
+				bestValue = value;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the child of the root with the most visits, 0 if the root has no children
+	 */
+	public int mostVisitedChild() {
+		int first = nodes.firstChild.get(0);
+		if(first <= 0)
+			return 0;
+		int best = 0;
+		for(int child = first; child < first + nodes.childCount[0]; child++) {
+			if(best == 0 || nodes.visits.get(child) > nodes.visits.get(best))
+				best = child;
+		}
+		return best;
+	}
+
+	/**
+	 * Makes the child of the root reached by the move the new root and drops the rest of the
+	 * tree, or starts over if the root has no such child. No search may be running.
+	 */
+	public void advance(int move) {
+		int first = nodes.firstChild.get(0);
+		for(int child = first; first > 0 && child < first + nodes.childCount[0]; child++) {
+			if(nodes.move[child] == move) {
+				reroot(child);
+				return;
+			}
+		}
+		clear();
+	}
+
+	private void reroot(int root) {
+		Nodes from = nodes, to = spare;
+		origin[0] = root;
+		copyNode(from, root, to, 0);
+		int count = 1;
+		for(int node = 0; node < count; node++) {
+			int old = origin[node];
+			int first = from.firstChild.get(old);
+			if(first == UNEXPANDED) {
+				to.firstChild.set(node, UNEXPANDED);
+				continue;
+			}
+			int children = from.childCount[old];
+			to.childCount[node] = (byte) children;
+			to.firstChild.set(node, count);
+			for(int child = first; child < first + children; child++) {
+				origin[count] = child;
+				copyNode(from, child, to, count++);
+			}
+		}
+		nodes = to;
+		spare = from;
+		size.set(count);
+		isFull = false;
+	}
+
+	private static void copyNode(Nodes from, int node, Nodes to, int index) {
+		to.move[index] = from.move[node];
+		to.visits.set(index, from.visits.get(node));
+		to.score.set(index, from.score.get(node));
+	}
+}
@@ -0,0 +1,78 @@
+package breakthrough;
+
+/**
+ * Scores and sorts the moves of a node before they are searched:
+ * the hash move first, then captures, then the killer moves of the ply,
+ * then the remaining quiet moves by their history score.
+ */
+public class MoveOrdering {
+
+	public static final int MAX_PLY = 128;
+
+	private static final int HASH_MOVE = 1 << 30;
+	private static final int CAPTURE = 1 << 29;
+	private static final int KILLER = 1 << 28;
+	private static final int MOVE_MASK = 0x3FFF;		// The from and to cells of a packed move, without the capture flag
+
+	private final int[][] killers = new int[MAX_PLY][2];	// Two quiet moves per ply that caused a cutoff, most recent first
+	private final int[] history = new int[2 << 14];		// Cutoff counts of quiet moves by color, from and to cell
+	private final int[] scores = new int[State.MAX_MOVES];
+
+	/**
+	 * Forgets the killers and ages the history, called before every search
+	 */
+	public void newSearch() {
+		for(int[] killer : killers) {
+			killer[0] = 0;
+			killer[1] = 0;
+		}
+		for(int i = 0; i < history.length; i++)
+			history[i] >>= 1;
+	}
+
+	/**
+	 * Sorts the moves of the state best first
+	 * @param hashMove packed move from the transposition table or the previous iteration, 0 if there is none
+	 */
+	public void order(State state, int[] moves, int count, int hashMove, int ply) {
+		int colorIndex = state.isWhiteTurn ? 0 : 1 << 14;
+		int[] killer = killers[Math.min(ply, MAX_PLY - 1)];
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			int score;
+			if(hashMove != 0 && (move & MOVE_MASK) == (hashMove & MOVE_MASK))
+				score = HASH_MOVE;
+			else if((move & State.CAPTURE) != 0)
+				score = CAPTURE;
+			else if(move == killer[0])
+				score = KILLER + 1;
+			else if(move == killer[1])
+				score = KILLER;
+			else
+				score = history[colorIndex | (move & MOVE_MASK)];
+			// Insertion sort, the move lists are short
+			int j = i;
+			for(; j > 0 && scores[j - 1] < score; j--) {
+				scores[j] = scores[j - 1];
+				moves[j] = moves[j - 1];
+			}
+			scores[j] = score;
+			moves[j] = move;
+		}
+	}
+
+	/**
+	 * Called when the move caused a cutoff, quiet moves become killers and gain history
+	 */
+	public void recordCutoff(State state, int move, int ply, int depth) {
+		if((move & State.CAPTURE) != 0)
+			return;
+		int[] killer = killers[Math.min(ply, MAX_PLY - 1)];
+		if(killer[0] != move) {
+			killer[1] = killer[0];
+			killer[0] = move;
+		}
+		int index = (state.isWhiteTurn ? 0 : 1 << 14) | (move & MOVE_MASK);
+		history[index] = Math.min(history[index] + depth * depth, KILLER - 1);
+	}
+}
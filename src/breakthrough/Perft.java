@@ -0,0 +1,187 @@
+package breakthrough;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the leaf nodes of the game tree to a fixed depth, to check the move generator and to time it.
+ * Usage:
+ *   Perft board depth [divide] [threads=N]   board is a breakthrough_*.gdl file or a size like 5x5
+ *   Perft check [threads=N]                  compares every board against the known counts
+ * <p>
+ * A position where the game has ended has no children, so it only counts as a leaf at the
+ * full depth. At depth 1 the moves are counted without being made (bulk counting).
+ */
+public class Perft {
+
+	// Known counts from the start position, for depth 1 and up
+	private static final String[] BOARDS = {"3x5", "5x5", "6x6", "7x7", "8x8", "9x9"};
+	private static final long[][] EXPECTED = {
+		{3, 10, 38, 134, 518, 1962, 7092, 25942, 88980},
+		{5, 28, 182, 1180, 8164, 54668, 377118, 2538670},
+		{6, 36, 256, 1854, 14640, 116902, 991246},
+		{7, 49, 392, 3141, 27206, 236622, 2186362},
+		{8, 64, 576, 5184, 50118, 484684, 4951852},
+		{9, 81, 810, 8100, 86670, 927376, 10452820},
+	};
+
+	private final State root;
+	private final int threads;
+
+	public Perft(State root, int threads) {
+		this.root = root;
+		this.threads = threads;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = 1;
+		boolean divide = false;
+		List<String> positional = new ArrayList<String>();
+		for(String arg : args) {
+			if(arg.startsWith("threads="))
+				threads = Integer.parseInt(arg.substring("threads=".length()));
+			else if(arg.equals("divide"))
+				divide = true;
+			else
+				positional.add(arg);
+		}
+		if(positional.size() == 1 && positional.get(0).equals("check")) {
+			System.exit(check(threads) ? 0 : 1);
+		}
+		if(positional.size() != 2) {
+			System.err.println("Usage: Perft board depth [divide] [threads=N] | Perft check [threads=N]");
+			System.exit(1);
+		}
+		int[] size = boardSize(positional.get(0));
+		Perft perft = new Perft(State.startPosition(size[0], size[1]), threads);
+		int depth = Integer.parseInt(positional.get(1));
+		long start = System.nanoTime();
+		long[] counts = perft.divide(depth);
+		long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+		long total = 0;
+		for(int i = 0; i < counts.length; i++) {
+			if(divide) {
+				int[] move = perft.root.unpackMove(perft.rootMoves()[i]);
+				System.out.println(move[0] + " " + move[1] + " " + move[2] + " " + move[3] + ": " + counts[i]);
+			}
+			total += counts[i];
+		}
+		System.out.println("Nodes: " + total + " in " + millis + " ms, " + total * 1000 / millis + " nodes/s");
+	}
+
+	/**
+	 * Runs every board of the regression table to its deepest known count
+	 * @return true if all counts match
+	 */
+	private static boolean check(int threads) throws Exception {
+		boolean isOk = true;
+		for(int b = 0; b < BOARDS.length; b++) {
+			int[] size = boardSize(BOARDS[b]);
+			Perft perft = new Perft(State.startPosition(size[0], size[1]), threads);
+			for(int depth = 1; depth <= EXPECTED[b].length; depth++) {
+				long start = System.nanoTime();
+				long nodes = perft.count(depth);
+				long millis = (System.nanoTime() - start) / 1000000;
+				boolean isMatch = nodes == EXPECTED[b][depth - 1];
+				isOk &= isMatch;
+				System.out.println(BOARDS[b] + " depth " + depth + ": " + nodes + (isMatch ? "" : " expected " + EXPECTED[b][depth - 1]) + " (" + millis + " ms)");
+			}
+		}
+		System.out.println(isOk ? "All counts match" : "MISMATCH");
+		return isOk;
+	}
+
+	/**
+	 * @return width and height from a gdl file, or from a size written as WxH
+	 */
+	static int[] boardSize(String board) throws IOException {
+		Matcher size = Pattern.compile("(\\d+)x(\\d+)").matcher(board);
+		if(size.matches())
+			return new int[] {Integer.parseInt(size.group(1)), Integer.parseInt(size.group(2))};
+		int width = 0, height = 0;
+		Pattern relation = Pattern.compile("^\\s*\\((width|height)\\s+(\\d+)\\)");
+		try(BufferedReader reader = new BufferedReader(new FileReader(board))) {
+			for(String line = reader.readLine(); line != null; line = reader.readLine()) {
+				Matcher m = relation.matcher(line);
+				if(!m.find())
+					continue;
+				if(m.group(1).equals("width"))
+					width = Integer.parseInt(m.group(2));
+				else
+					height = Integer.parseInt(m.group(2));
+			}
+		}
+		if(width == 0 || height == 0)
+			throw new IOException("No width and height in " + board);
+		return new int[] {width, height};
+	}
+
+	private int[] rootMoves() {
+		int[] moves = new int[State.MAX_MOVES];
+		int count = root.legalMoves(moves);
+		return java.util.Arrays.copyOf(moves, count);
+	}
+
+	public long count(int depth) throws Exception {
+		long total = 0;
+		for(long nodes : divide(depth))
+			total += nodes;
+		return total;
+	}
+
+	/**
+	 * @return the leaf count below each root move, in the order legalMoves generates them
+	 */
+	public long[] divide(final int depth) throws Exception {
+		final int[] moves = rootMoves();
+		long[] counts = new long[moves.length];
+		if(depth == 0 || root.isTerminal)
+			return depth == 0 ? new long[] {1} : counts;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> running = new ArrayList<Future<Long>>();
+			for(final int move : moves) {
+				running.add(pool.submit(new Callable<Long>() {
+					@Override
+					public Long call() {
+						State state = new State(root);				// Every root move is counted on its own copy
+						state.successorState(move);
+						return perft(state, depth - 1, new int[Math.max(1, depth)][State.MAX_MOVES], 0);
+					}
+				}));
+			}
+			for(int i = 0; i < moves.length; i++)
+				counts[i] = running.get(i).get();
+		} finally {
+			pool.shutdown();
+		}
+		return counts;
+	}
+
+	private static long perft(State state, int depth, int[][] buffers, int ply) {
+		if(depth == 0)
+			return 1;
+		if(state.isTerminal)
+			return 0;										// The game is over, no moves below this one
+		int[] moves = buffers[ply];
+		int count = state.legalMoves(moves);
+		if(depth == 1)
+			return count;
+		long nodes = 0;
+		for(int i = 0; i < count; i++) {
+			state.successorState(moves[i]);
+			nodes += perft(state, depth - 1, buffers, ply + 1);
+			state.rewindState();
+		}
+		return nodes;
+	}
+}
@@ -0,0 +1,229 @@
+package breakthrough;
+
+import java.util.Arrays;
+
+/**
+ * Depth-first proof-number search (df-pn) for forced wins, run next to the alpha-beta search
+ * once the game gets close to its end. It tries to prove that the player to move at the root
+ * wins, and for each root move that the opponent wins after it. A proven win is played at
+ * once, and root moves proven lost are skipped by the searchers.
+ * <p>
+ * The attacker is the player whose win is being proven. A draw counts as a failure to prove,
+ * so only real wins and losses come out of it. Pawns only move forward, so the game graph has
+ * no cycles and the table can't mix up values of different paths. The table is fixed in size
+ * and always replaces, which bounds the memory; df-pn only needs it as a cache.
+ */
+public class ProofNumberSearch {
+
+	public static final int SOLVE_PAWNS = 12;			// Solve positions with this many pawns in total or fewer
+	public static final int SOLVE_DISTANCE = 2;			// Or with a pawn this close to the goal
+	static final int INFINITY = Integer.MAX_VALUE / 2;	// Proof and disproof numbers are capped at this
+	private static final int TABLE_BITS = 20;			// 2^20 entries of 16 bytes
+	private static final int FIRST_BUDGET = 1 << 12;	// Nodes of the first attempt, doubled every round
+	private static final int MAX_DEPTH = 4 * 9 * 9;		// A game can't be longer, see State
+	private static final long WHITE_ATTACKS_KEY = 0x9E3779B97F4A7C15L;	// Keeps the tables of the two attackers apart
+
+	private final TimeManager time;
+	private final long[] keys = new long[1 << TABLE_BITS];
+	private final int[] tableProofs = new int[1 << TABLE_BITS];
+	private final int[] tableDisproofs = new int[1 << TABLE_BITS];
+	private final int[][] moveBuffers = new int[MAX_DEPTH + 1][State.MAX_MOVES];
+	private final int[][] childProofs = new int[MAX_DEPTH + 1][State.MAX_MOVES];
+	private final int[][] childDisproofs = new int[MAX_DEPTH + 1][State.MAX_MOVES];
+	private boolean isWhiteAttacker;
+	private long nodes, budget;
+	private int proof, disproof;						// Numbers of the node mid() or evaluate() was last called on
+	private volatile long rootKey;						// Position the results below are for
+	private volatile int winningMove;
+	private final boolean[] isLost = new boolean[State.MAX_MOVES];	// By index in rootMoves
+	private final int[] rootMoves = new int[State.MAX_MOVES];
+	private volatile int rootCount, lostCount;
+
+	public ProofNumberSearch(TimeManager time) {
+		this.time = time;
+	}
+
+	/**
+	 * @return true if the position is near enough to the end of the game to be worth solving
+	 */
+	public static boolean isCandidate(State state) {
+		int pawns = Long.bitCount(state.white) + Long.bitCount(state.whiteHigh) + Long.bitCount(state.black) + Long.bitCount(state.blackHigh);
+		return pawns <= SOLVE_PAWNS || state.distanceToGoal(true) <= SOLVE_DISTANCE || state.distanceToGoal(false) <= SOLVE_DISTANCE;
+	}
+
+	/**
+	 * @return the move proven to win the given root position, 0 if there is none (yet)
+	 */
+	public int winningMove(State root) {
+		return root.getZobristKey() == rootKey ? winningMove : 0;
+	}
+
+	/**
+	 * @return true if the move of the given root position is proven to lose and some other move is not
+	 */
+	public boolean isPruned(State root, int move) {
+		if(root.getZobristKey() != rootKey || lostCount == 0 || lostCount == rootCount)
+			return false;
+		for(int i = 0; i < rootCount; i++) {
+			if(rootMoves[i] == move)
+				return isLost[i];
+		}
+		return false;
+	}
+
+	/**
+	 * Works on the root until the time manager stops it or every root move is decided, with a
+	 * node budget that doubles every round. Stops the time manager when it proves a win, so
+	 * the alpha-beta searchers give up too. The state is left as it was.
+	 */
+	public void solve(State root) {
+		rootKey = 0;
+		winningMove = 0;
+		lostCount = 0;
+		Arrays.fill(isLost, false);
+		rootCount = root.legalMoves(rootMoves);
+		rootKey = root.getZobristKey();
+		for(budget = FIRST_BUDGET; !time.isStopped(); budget *= 2) {
+			if(prove(root, root.isWhiteTurn)) {
+				winningMove = findWinningMove(root);
+				time.stop();
+				return;
+			}
+			boolean isOpen = disproof != 0;					// The root could still be a win
+			for(int i = 0; i < rootCount && !time.isStopped(); i++) {
+				if(isLost[i])
+					continue;
+				root.successorState(rootMoves[i]);
+				if(prove(root, root.isWhiteTurn)) {				// The opponent, to move now, wins
+					isLost[i] = true;
+					lostCount++;
+				}
+				else
+					isOpen |= disproof != 0;
+				root.rewindState();
+			}
+			if(!isOpen)
+				return;										// Nothing left to prove either way
+		}
+	}
+
+	/**
+	 * Runs df-pn from the position within the node budget
+	 * @return true if the attacker is proven to win, proof and disproof hold the numbers of the position
+	 */
+	private boolean prove(State state, boolean isWhiteAttacker) {
+		this.isWhiteAttacker = isWhiteAttacker;
+		nodes = 0;
+		mid(state, INFINITY, INFINITY, 0);
+		return proof == 0;
+	}
+
+	private int findWinningMove(State root) {
+		for(int i = 0; i < rootCount; i++) {
+			root.successorState(rootMoves[i]);
+			boolean isWin = root.isTerminal || prove(root, !root.isWhiteTurn);
+			root.rewindState();
+			if(isWin)
+				return rootMoves[i];						// The opponent can't escape after this move
+		}
+		return 0;											// The table lost the proof, the searchers will find the win
+	}
+
+	/**
+	 * Expands the position until its proof number reaches proofThreshold or its disproof number
+	 * reaches disproofThreshold, the numbers end up in proof and disproof
+	 */
+	private void mid(State state, int proofThreshold, int disproofThreshold, int ply) {
+		nodes++;
+		if(evaluate(state, ply))
+			return;
+		boolean isOr = state.isWhiteTurn == isWhiteAttacker;
+		int[] moves = moveBuffers[ply], proofs = childProofs[ply], disproofs = childDisproofs[ply];
+		int count = state.legalMoves(moves);
+		for(int i = 0; i < count; i++) {
+			state.successorState(moves[i]);
+			evaluate(state, ply + 1);
+			state.rewindState();
+			proofs[i] = proof;
+			disproofs[i] = disproof;
+		}
+		while(true) {
+			// An OR node needs one child proven and all disproven, an AND node the other way around
+			int[] mins = isOr ? proofs : disproofs, sums = isOr ? disproofs : proofs;
+			int best = 0, second = INFINITY;
+			long sum = 0;
+			for(int i = 0; i < count; i++) {
+				sum += sums[i];
+				if(mins[i] < mins[best]) {
+					second = mins[best];
+					best = i;
+				}
+				else if(i != best && mins[i] < second)
+					second = mins[i];
+			}
+			int min = mins[best], total = (int) Math.min(sum, INFINITY);
+			proof = isOr ? min : total;
+			disproof = isOr ? total : min;
+			if(proof >= proofThreshold || disproof >= disproofThreshold || nodes >= budget || time.isStopped())
+				break;
+			int childProofThreshold, childDisproofThreshold;
+			if(isOr) {
+				childProofThreshold = Math.min(proofThreshold, second + 1);
+				childDisproofThreshold = (int) Math.min(INFINITY, (long) disproofThreshold - disproof + disproofs[best]);
+			}
+			else {
+				childDisproofThreshold = Math.min(disproofThreshold, second + 1);
+				childProofThreshold = (int) Math.min(INFINITY, (long) proofThreshold - proof + proofs[best]);
+			}
+			state.successorState(moves[best]);
+			mid(state, childProofThreshold, childDisproofThreshold, ply + 1);
+			state.rewindState();
+			proofs[best] = proof;
+			disproofs[best] = disproof;
+		}
+		store(state, proof, disproof);
+	}
+
+	/**
+	 * Sets proof and disproof for a position that is not expanded yet: exact if the game is
+	 * decided, from the table if it is there, else from the number of moves
+	 * @return true if the game is decided
+	 */
+	private boolean evaluate(State state, int ply) {
+		boolean isOr = state.isWhiteTurn == isWhiteAttacker;
+		if(state.isTerminal)
+			return decide(!isOr);							// The player who just moved got through
+		if(state.threatensWin(state.isWhiteTurn))
+			return decide(isOr);							// And will on this move
+		int slot = (int) (key(state) >>> (64 - TABLE_BITS));
+		if(keys[slot] == key(state)) {
+			proof = tableProofs[slot];
+			disproof = tableDisproofs[slot];
+			return proof == 0 || disproof == 0;
+		}
+		int count = state.legalMoves(moveBuffers[ply + 1]);
+		if(count == 0)
+			return decide(false);							// Stuck, a draw is no win
+		proof = isOr ? 1 : count;							// A defender with many moves takes more to refute
+		disproof = isOr ? count : 1;
+		return false;
+	}
+
+	private boolean decide(boolean isAttackerWin) {
+		proof = isAttackerWin ? 0 : INFINITY;
+		disproof = isAttackerWin ? INFINITY : 0;
+		return true;
+	}
+
+	private void store(State state, int proof, int disproof) {
+		long key = key(state);
+		int slot = (int) (key >>> (64 - TABLE_BITS));
+		keys[slot] = key;
+		tableProofs[slot] = proof;
+		tableDisproofs[slot] = disproof;
+	}
+
+	private long key(State state) {
+		return isWhiteAttacker ? state.getZobristKey() ^ WHITE_ATTACKS_KEY : state.getZobristKey();
+	}
+}
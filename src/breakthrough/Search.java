@@ -0,0 +1,372 @@
+package breakthrough;
+
+/**
+ * One principal variation searcher with its own state, move buffers and move ordering tables.
+ * Scores are negamax style, always for the player to move at the node, and a win in d plies
+ * from the root scores Tablebase.WIN_SCORE - d wherever it is found. Late quiet moves are
+ * searched with reduced depth and hopeless quiet moves near the leaves are skipped, but never
+ * captures, moves onto the last two rows or the moves of a player about to be broken through.
+ * Several searchers can run at once on copies of the same position and share the
+ * transposition table, which is how the lazy SMP search of AlphaBetaAgent works.
+ */
+public class Search {
+	
+	public static final int MAX_QUIESCENCE_PLY = 8;		// Forcing moves followed past the depth limit
+	private static final int WIN_BOUND = Tablebase.WIN_SCORE - 1000;	// Scores past this are won or lost games
+	
+	private final int id;				// 0 for the main searcher, helpers vary their move order by it
+	private final TranspositionTable table;
+	private final TimeManager time;		// Shared by all searchers, tells them when to give up
+	private final Tablebase tablebase;	// null if there is no tablebase for the board
+	private final ProofNumberSearch solver;	// Its proven lost root moves are skipped, null if there is none
+	private final SearchConfig config;
+	private final MoveOrdering ordering = new MoveOrdering();
+	private final int[][] moveBuffers = new int[MoveOrdering.MAX_PLY + MAX_QUIESCENCE_PLY][State.MAX_MOVES];	// Legal moves of each ply, reused by every node
+	private State state;
+	private final boolean isPvs;		// Null window scouts after the first move, else plain alpha-beta
+	private final boolean isMtdf;		// Root driven by MTD(f) instead of one full window search
+	private boolean isCutOff;
+	private int rootValue;				// Value of the last root search, the first guess of MTD(f)
+	private int rootMove;				// Best move of the last root search, 0 if none was finished
+	public int numberOfExpansion;
+	public int completedDepth;			// Deepest iteration that finished in the last search
+	public double branchingFactor;		// Effective branching factor of the last finished iterations
+	public long tableProbes, tableHits;	// Transposition table lookups and the ones that found the position
+	public long cutoffs, firstMoveCutoffs;	// Beta cutoffs and the ones caused by the first move searched
+	
+	public Search(int id, TranspositionTable table, TimeManager time, Tablebase tablebase, ProofNumberSearch solver, SearchConfig config) {
+		this.id = id;
+		this.table = table;
+		this.time = time;
+		this.tablebase = tablebase;
+		this.solver = solver;
+		this.config = config;
+		isPvs = !config.mode.equals("alphabeta");
+		isMtdf = config.mode.equals("mtdf");
+	}
+	
+	/**
+	 * Iterative deepening from the given depth until the time manager stops it or the game tree
+	 * has been searched to the end. The main searcher also stops when the next iteration is not
+	 * expected to finish in time.
+	 * @param expectedMove move to search first at the root, 0 if there is no guess
+	 * @return the best move of the deepest iteration that finished at least its first root move,
+	 * 0 if none did
+	 */
+	public int iterativeDeepening(State state, int firstDepth, int expectedMove) {
+		this.state = state;
+		ordering.newSearch();
+		completedDepth = 0;
+		numberOfExpansion = 0;
+		branchingFactor = 0;
+		tableProbes = tableHits = cutoffs = firstMoveCutoffs = 0;
+		rootValue = state.eval();
+		int depth = firstDepth;
+		int move = expectedMove;
+		long[] iterationNodes = {1, 1};				// Nodes of the previous two iterations, for the effective branching factor
+		while(true){
+			long iterationStart = System.currentTimeMillis();
+			int nodesBefore = numberOfExpansion;
+			isCutOff = false;
+			int result = searchRoot(state, depth, move);
+			if(time.isStopped()) {
+				if(result != 0)
+					move = result;						// Cut short, but the root moves it finished include the previous best
+				break;
+			}
+			move = result;
+			completedDepth = depth;
+			if(!isCutOff || depth == MoveOrdering.MAX_PLY - 1 || time.isDepthLimit(depth))
+				break;
+			long nodes = Math.max(1, numberOfExpansion - nodesBefore);
+			branchingFactor = Math.sqrt((double) nodes / iterationNodes[0]);	// Over two plies, alpha-beta alternates between cheap and expensive depths
+			iterationNodes[0] = iterationNodes[1];
+			iterationNodes[1] = nodes;
+			if(id == 0 && !time.canStartIteration(System.currentTimeMillis() - iterationStart, branchingFactor))
+				break;
+			depth++;
+		}
+		return move;
+	}
+	
+	/**
+	 * Searches the root moves with the previous best first. If the time runs out, the best of
+	 * the root moves searched to the end is returned: the first one is the previous best, so
+	 * any other move it returns was found to be better at this depth. 0 if not even the first
+	 * root move was finished.
+	 */
+	private int searchRoot(State state, int depth, int previousBest) {
+		if(depth == 0) {
+			isCutOff = true;
+			return previousBest;
+		}
+		if(isMtdf)
+			return mtdf(state, depth, previousBest);
+		rootValue = searchRoot(state, -Integer.MAX_VALUE, Integer.MAX_VALUE, depth, previousBest);
+		return rootMove;
+	}
+	
+	/**
+	 * MTD(f): closes in on the value of the root with null window searches only, starting from
+	 * the value of the previous iteration. Every search either raises the lower bound (and finds
+	 * a move at least that good) or lowers the upper bound, the table keeps the work of the
+	 * earlier searches so each one is cheap.
+	 */
+	private int mtdf(State state, int depth, int previousBest) {
+		int guess = rootValue;
+		int lower = -Integer.MAX_VALUE, upper = Integer.MAX_VALUE;
+		int bestMove = previousBest;
+		while(lower < upper) {
+			int beta = guess == lower ? guess + 1 : guess;
+			int value = searchRoot(state, beta - 1, beta, depth, bestMove);
+			if(value >= beta && rootMove != 0)
+				bestMove = rootMove;							// Proven at least as good as the bound, better than the rest
+			if(time.isStopped())
+				break;
+			if(value >= beta)
+				lower = value;
+			else
+				upper = value;
+			guess = value;
+		}
+		rootValue = guess;
+		return bestMove != 0 ? bestMove : rootMove;			// Every move lost, any of them will do
+	}
+	
+	/**
+	 * Searches the root moves within a window and leaves the best one in rootMove
+	 * @return the value of the root, fail soft
+	 */
+	private int searchRoot(State state, int alpha, int beta, int depth, int firstMove) {
+		int bestValue = Integer.MIN_VALUE;
+		rootMove = 0;
+		int[] moves = moveBuffers[0];
+		int count = state.legalMoves(moves);
+		ordering.order(state, moves, count, firstMove, 0);	// Best move of the previous iteration first
+		if(id > 0 && count > 2)
+			rotate(moves, 1, count, id % (count - 1));			// Helpers start on different moves after the first one
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			if(solver != null && solver.isPruned(state, move))
+				continue;
+			numberOfExpansion++;
+			state.successorState(move);
+			int value;
+			if(bestValue == Integer.MIN_VALUE || !isPvs)		// The first move searched gets the full window
+				value = -search(state, -beta, -alpha, depth - 1, 1);
+			else {
+				value = scout(state, alpha, depth - 1, 1);
+				if(value > alpha && value < beta)
+					value = -search(state, -beta, -alpha, depth - 1, 1);
+			}
+			state.rewindState();
+			if(time.isStopped())
+				return bestValue;								// The move just searched is unfinished, it does not count
+			if(value > bestValue) {
+				bestValue = value;
+				rootMove = move;
+			}
+			if(value >= beta)
+				break;
+			alpha = Math.max(alpha, value);
+		}
+		return bestValue;
+	}
+	
+	private static void rotate(int[] moves, int from, int to, int distance) {
+		for(int r = 0; r < distance; r++) {
+			int first = moves[from];
+			System.arraycopy(moves, from + 1, moves, from, to - from - 1);
+			moves[to - 1] = first;
+		}
+	}
+	
+	/**
+	 * Null window search of a child that is expected to be no better than alpha
+	 * @return the value of the child for the parent, greater than alpha if it has to be searched again
+	 */
+	private int scout(State child, int alpha, int depth, int ply) {
+		return -search(child, -alpha - 1, -alpha, depth, ply);
+	}
+	
+	/**
+	 * Principal variation search, negamax style: the value is for the player to move, and the
+	 * value of a child is the negation of its value for the opponent. The first move is
+	 * searched with the full window, the others only have to prove they are no better with a
+	 * null window, and are searched again with the full window when they are.
+	 */
+	private int search(State state, int alpha, int beta, int depth, int ply) {
+		if(time.isStopped() || (numberOfExpansion & TimeManager.POLL_MASK) == 0 && time.poll(numberOfExpansion, id == 0))
+			return 0;											// Out of time, the caller throws the value away
+		else if(state.isTerminal)
+			return -(Tablebase.WIN_SCORE - ply);				// The opponent got through
+		else if(tablebase != null && tablebase.covers(state))
+			return fromNode(tablebase.score(state), ply);		// Exact, so not a cutoff even at the depth limit
+		else if(depth == 0) {
+			isCutOff = true;
+			return config.quiescence ? quiesce(state, alpha, beta, 0, ply) : fromNode(state.eval(), ply);
+		}
+		int decided = state.decidedScore();					// The evaluation at the leaves does this too
+		if(decided != 0) {
+			isCutOff = true;									// Not played out, so not solved either
+			return fromNode(decided, ply);						// A runner or a threat settles it
+		}
+		long entry = probeTable(state);
+		if(isTableCutoff(entry, alpha, beta, depth, ply))
+			return fromNode(TranspositionTable.score(entry), ply);
+		int[] moves = moveBuffers[ply];
+		int count = state.legalMoves(moves);
+		if(count == 0)
+			return 0;											// Stuck, a draw
+		boolean wasCutOff = isCutOff;
+		isCutOff = false;
+		int alphaOrig = alpha;
+		int value = Integer.MIN_VALUE;
+		int bestMove = 0;
+		// Selective search only where no pawn is about to get through and no win is in sight
+		boolean isSelective = (config.lmr || config.futility) && Math.abs(alpha) < WIN_BOUND && Math.abs(beta) < WIN_BOUND
+				&& !state.threatensWin(!state.isWhiteTurn);
+		int futilityValue = Integer.MAX_VALUE;
+		if(isSelective && config.futility && depth <= 2)
+			futilityValue = state.eval() + depth * config.futilityMargin;	// A quiet move can't gain more than this
+		ordering.order(state, moves, count, entry == 0 ? 0 : TranspositionTable.move(entry), ply);
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			boolean isQuiet = isSelective && i > 0 && !state.isForcing(move);
+			if(isQuiet && futilityValue <= alpha) {
+				value = Math.max(value, futilityValue);
+				isCutOff = true;									// Not searched, so not solved
+				continue;
+			}
+			numberOfExpansion++;
+			state.successorState(move);
+			int childValue;
+			if(i == 0 || !isPvs)
+				childValue = -search(state, -beta, -alpha, depth - 1, ply + 1);
+			else {
+				childValue = alpha + 1;
+				if(isQuiet && config.lmr && i >= config.lmrMoves && depth >= config.lmrDepth)
+					childValue = scout(state, alpha, depth - 1 - reduction(i, depth), ply + 1);	// Late quiet moves get less depth
+				if(childValue > alpha)
+					childValue = scout(state, alpha, depth - 1, ply + 1);	// Unless they fail high
+				if(childValue > alpha && childValue < beta)
+					childValue = -search(state, -beta, -alpha, depth - 1, ply + 1);
+			}
+			state.rewindState();
+			if(time.isStopped())
+				return 0;
+			if(childValue > value) {
+				value = childValue;
+				bestMove = move;
+			}
+			if(value >= beta) {
+				countCutoff(i);
+				ordering.recordCutoff(state, move, ply, depth);
+				break;
+			}
+			alpha = Math.max(alpha, value);
+		}
+		storeEntry(state, value, alphaOrig, beta, depth, ply, bestMove);
+		isCutOff |= wasCutOff;
+		return value;
+	}
+	
+	/**
+	 * @return the plies a late quiet move is searched with less, more the later it comes and the deeper the node is
+	 */
+	private static int reduction(int moveIndex, int depth) {
+		return moveIndex >= 8 && depth >= 6 ? 2 : 1;
+	}
+	
+	/**
+	 * Quiescence search: past the depth limit only captures and moves onto the last two rows
+	 * are followed, so the leaves are not in the middle of an exchange or a breakthrough.
+	 * The player to move may stand pat on the static evaluation, unless the opponent is about
+	 * to reach the goal. Then only a capture can save it, quiet moves can't block a pawn.
+	 */
+	private int quiesce(State state, int alpha, int beta, int qply, int ply) {
+		if(time.isStopped() || (numberOfExpansion & TimeManager.POLL_MASK) == 0 && time.poll(numberOfExpansion, id == 0))
+			return 0;
+		if(state.isTerminal)
+			return -(Tablebase.WIN_SCORE - ply);
+		if(state.threatensWin(state.isWhiteTurn))
+			return Tablebase.WIN_SCORE - (ply + 1);				// We get through on the next move
+		boolean isThreatened = state.threatensWin(!state.isWhiteTurn);
+		int value = isThreatened ? -(Tablebase.WIN_SCORE - (ply + 2)) : fromNode(state.eval(), ply);	// Stand pat
+		if(value >= beta || qply == MAX_QUIESCENCE_PLY)
+			return value;
+		alpha = Math.max(alpha, value);
+		int[] moves = moveBuffers[ply];
+		int count = state.forcingMoves(moves);
+		for(int i = 0; i < count; i++) {
+			int move = moves[i];
+			if(isThreatened && (move & State.CAPTURE) == 0)
+				break;											// Captures come first, the rest can't stop the opponent
+			numberOfExpansion++;
+			int childValue = -quiesce(state.successorState(move), -beta, -alpha, qply + 1, ply + 1);
+			state.rewindState();
+			if(time.isStopped())
+				return 0;
+			if(childValue > value)
+				value = childValue;
+			if(value >= beta)
+				break;
+			alpha = Math.max(alpha, value);
+		}
+		return value;
+	}
+	
+	private long probeTable(State state) {
+		long entry = table.probe(state.getZobristKey());
+		tableProbes++;
+		if(entry != 0)
+			tableHits++;
+		return entry;
+	}
+	
+	private void countCutoff(int moveIndex) {
+		cutoffs++;
+		if(moveIndex == 0)
+			firstMoveCutoffs++;
+	}
+	
+	/**
+	 * @return true if the table entry settles the value of the node, the value is then the score of the entry
+	 */
+	private boolean isTableCutoff(long entry, int alpha, int beta, int depth, int ply) {
+		if(entry == 0 || TranspositionTable.depth(entry) < depth)
+			return false;
+		int score = fromNode(TranspositionTable.score(entry), ply);
+		switch(TranspositionTable.bound(entry)) {
+		case TranspositionTable.LOWER:
+			if(score < beta)
+				return false;
+			break;
+		case TranspositionTable.UPPER:
+			if(score > alpha)
+				return false;
+			break;
+		}
+		if(TranspositionTable.depth(entry) != TranspositionTable.SOLVED)
+			isCutOff = true;								// The stored search was cut off by the depth limit somewhere
+		return true;
+	}
+	
+	/**
+	 * Stores the result of a node, isCutOff tells whether the depth limit was hit below it.
+	 * Wins and losses are stored counted from the node, the same position can be reached at any ply.
+	 */
+	private void storeEntry(State state, int value, int alpha, int beta, int depth, int ply, int bestMove) {
+		int bound = value <= alpha ? TranspositionTable.UPPER : value >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		int score = value > WIN_BOUND ? value + ply : value < -WIN_BOUND ? value - ply : value;
+		table.store(state.getZobristKey(), score, bestMove, isCutOff ? depth : TranspositionTable.SOLVED, bound);
+	}
+	
+	/**
+	 * @return the score of a node, with a win or loss in d plies from the node turned into one
+	 * in ply + d plies from the root, so a nearer win always scores higher
+	 */
+	private static int fromNode(int score, int ply) {
+		return score > WIN_BOUND ? score - ply : score < -WIN_BOUND ? score + ply : score;
+	}
+}
@@ -0,0 +1,111 @@
+package breakthrough;
+
+/**
+ * Tunable settings of the search, given on the command line as name=value pairs
+ */
+public class SearchConfig {
+	
+	public String engine = "alphabeta";	// Which agent Main plays with, alphabeta (lazy SMP), ybw (young brothers wait) or mcts
+	public int hashMegabytes = 64;		// Memory budget of the transposition table, or of the tree of mcts
+	public int threads = 1;				// Number of lazy SMP searchers or playout threads, the main one included
+	public boolean ponder = true;		// Think on the opponent's time
+	public int marginMillis = 500;		// Taken off the playclock for the network and the server
+	public long nodes = 0;				// Nodes the main searcher may expand per move, 0 for no limit, for reproducible matches
+	public int depth = 0;				// Deepest iteration to search, 0 for no limit
+	public String mode = "pvs";			// Window scheme of the search: alphabeta (full window), pvs or mtdf
+	public boolean quiescence = true;	// Follow captures and runs to the goal past the depth limit
+	public boolean lmr = true;			// Late move reductions of quiet moves
+	public int lmrMoves = 3;			// Moves of a node searched to full depth before the reductions start
+	public int lmrDepth = 3;			// Shallowest remaining depth that reduces
+	public boolean futility = true;		// Skip quiet moves that can't raise alpha in the last two plies
+	public int futilityMargin = 20;		// Most a quiet move is assumed to gain per remaining ply
+	public boolean solver = true;		// Run a proof-number solver next to alphabeta once the game nears its end
+	public String playout = "heavy";	// Playouts of mcts: light (uniformly random) or heavy (takes and stops wins)
+	public String tablebase;			// File made by TablebaseGenerator, used when the match is on its board size
+	
+	public static SearchConfig parse(String[] options, int from) {
+		SearchConfig config = new SearchConfig();
+		for(int i = from; i < options.length; i++)
+			config.set(options[i]);
+		return config;
+	}
+	
+	public Agent createAgent() {
+		switch(engine) {
+		case "alphabeta":
+			return new AlphaBetaAgent(this);
+		case "ybw":
+			return new YoungBrothersWaitAgent(this);
+		case "mcts":
+			return new MonteCarloAgent(this);
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + engine);
+		}
+	}
+	
+	public void set(String option) {
+		int eq = option.indexOf('=');
+		if(eq < 0)
+			throw new IllegalArgumentException("Expected name=value but got: " + option);
+		String name = option.substring(0, eq), value = option.substring(eq + 1);
+		switch(name) {
+		case "engine":
+			engine = value;
+			break;
+		case "hash":
+			hashMegabytes = Integer.parseInt(value);
+			break;
+		case "threads":
+			threads = Math.max(1, Integer.parseInt(value));
+			break;
+		case "ponder":
+			ponder = Boolean.parseBoolean(value);
+			break;
+		case "margin":
+			marginMillis = Math.max(0, Integer.parseInt(value));
+			break;
+		case "nodes":
+			nodes = Math.max(0, Long.parseLong(value));
+			break;
+		case "depth":
+			depth = Math.max(0, Integer.parseInt(value));
+			break;
+		case "mode":
+			if(!value.equals("alphabeta") && !value.equals("pvs") && !value.equals("mtdf"))
+				throw new IllegalArgumentException("Unknown search mode: " + value);
+			mode = value;
+			break;
+		case "quiescence":
+			quiescence = Boolean.parseBoolean(value);
+			break;
+		case "solver":
+			solver = Boolean.parseBoolean(value);
+			break;
+		case "playout":
+			if(!value.equals("light") && !value.equals("heavy"))
+				throw new IllegalArgumentException("Unknown playout policy: " + value);
+			playout = value;
+			break;
+		case "lmr":
+			lmr = Boolean.parseBoolean(value);
+			break;
+		case "lmrMoves":
+			lmrMoves = Math.max(1, Integer.parseInt(value));
+			break;
+		case "lmrDepth":
+			lmrDepth = Math.max(2, Integer.parseInt(value));
+			break;
+		case "futility":
+			futility = Boolean.parseBoolean(value);
+			break;
+		case "futilityMargin":
+			futilityMargin = Math.max(0, Integer.parseInt(value));
+			break;
+		case "tablebase":
+			tablebase = value;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown search option: " + name);
+		}
+	}
+}
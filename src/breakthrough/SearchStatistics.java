@@ -0,0 +1,11 @@
+package breakthrough;
+
+/**
+ * Implemented by agents that can tell how their searches went, read by the arena and the /metrics page
+ */
+public interface SearchStatistics {
+	/**
+	 * @return the statistics of the recent moves, updated after every move the agent makes
+	 */
+	public SearchTelemetry telemetry();
+}
@@ -0,0 +1,51 @@
+package breakthrough;
+
+import java.util.Locale;
+
+/**
+ * What the search of one move did, summed over all of its threads
+ */
+public class SearchStats {
+
+	public final long timestamp;				// When the move was sent, in milliseconds since the epoch
+	public final long nodes;					// Searched on our own time
+	public final long ponderNodes;				// Searched on the opponent's time by a ponder search that hit, not part of nodes
+	public final long millis;					// Time from receiving the opponent's move to answering
+	public final int playclock;					// Milliseconds we had for the move
+	public final int depth;						// Deepest iteration the main searcher finished
+	public final double branchingFactor;		// Effective branching factor of the main searcher
+	public final double firstMoveCutoffRate;	// Share of the cutoffs caused by the first move searched
+	public final double tableHitRate;			// Share of the transposition table lookups that found the position
+
+	public SearchStats(long nodes, long ponderNodes, long millis, int playclock, int depth, double branchingFactor, long cutoffs, long firstMoveCutoffs, long tableProbes, long tableHits) {
+		this.timestamp = System.currentTimeMillis();
+		this.nodes = nodes;
+		this.ponderNodes = ponderNodes;
+		this.millis = millis;
+		this.playclock = playclock;
+		this.depth = depth;
+		this.branchingFactor = branchingFactor;
+		this.firstMoveCutoffRate = cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+		this.tableHitRate = tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+	}
+
+	/**
+	 * @return the speed on our own time, the ponder nodes were searched before millis started
+	 */
+	public long nodesPerSecond() {
+		return nodes * 1000 / Math.max(1, millis);
+	}
+
+	/**
+	 * @return the share of the playclock the move took
+	 */
+	public double playclockUsed() {
+		return playclock == 0 ? 0 : (double) millis / playclock;
+	}
+
+	public String toJson() {
+		return String.format(Locale.ROOT, "{\"timestamp\":%d,\"nodes\":%d,\"ponderNodes\":%d,\"nps\":%d,\"depth\":%d,\"branchingFactor\":%.3f,"
+				+ "\"firstMoveCutoffRate\":%.4f,\"tableHitRate\":%.4f,\"millis\":%d,\"playclock\":%d,\"playclockUsed\":%.4f}",
+				timestamp, nodes, ponderNodes, nodesPerSecond(), depth, branchingFactor, firstMoveCutoffRate, tableHitRate, millis, playclock, playclockUsed());
+	}
+}
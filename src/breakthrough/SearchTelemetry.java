@@ -0,0 +1,90 @@
+package breakthrough;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The statistics of the last CAPACITY moves in a ring, written by the agent and read by the
+ * /metrics handler of GamePlayer on another thread. Neither side takes a lock: a slot is
+ * claimed with a counter and holds an immutable SearchStats.
+ */
+public class SearchTelemetry {
+
+	public static final int CAPACITY = 256;
+
+	private final AtomicReferenceArray<SearchStats> ring = new AtomicReferenceArray<SearchStats>(CAPACITY);
+	private final AtomicLong moves = new AtomicLong();		// Moves recorded so far, the next one goes to slot moves % CAPACITY
+	private final AtomicLong nodes = new AtomicLong();
+	private final AtomicLong ponderNodes = new AtomicLong();
+
+	public void record(SearchStats stats) {
+		long slot = moves.getAndIncrement();
+		ring.set((int) (slot % CAPACITY), stats);
+		nodes.addAndGet(stats.nodes);
+		ponderNodes.addAndGet(stats.ponderNodes);
+	}
+
+	/**
+	 * @return the statistics of the last move, null if there was none
+	 */
+	public SearchStats last() {
+		long count = moves.get();
+		return count == 0 ? null : ring.get((int) ((count - 1) % CAPACITY));
+	}
+
+	/**
+	 * @return the recorded moves still in the ring, oldest first
+	 */
+	public List<SearchStats> recent() {
+		long count = moves.get();
+		List<SearchStats> recent = new ArrayList<SearchStats>();
+		for(long i = Math.max(0, count - CAPACITY); i < count; i++) {
+			SearchStats stats = ring.get((int) (i % CAPACITY));
+			if(stats != null)
+				recent.add(stats);
+		}
+		return recent;
+	}
+
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"moves\":").append(moves.get()).append(",\"nodes\":").append(nodes.get())
+				.append(",\"ponderNodes\":").append(ponderNodes.get()).append(",\"recent\":[");
+		List<SearchStats> recent = recent();
+		for(int i = 0; i < recent.size(); i++)
+			json.append(i == 0 ? "" : ",").append(recent.get(i).toJson());
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * @return the Prometheus text format: the totals as counters and the last move as gauges
+	 */
+	public String toPrometheus() {
+		StringBuilder text = new StringBuilder();
+		metric(text, "breakthrough_moves_total", "counter", "Moves searched", moves.get());
+		metric(text, "breakthrough_nodes_total", "counter", "Nodes searched over all moves on our own time", nodes.get());
+		metric(text, "breakthrough_ponder_nodes_total", "counter", "Nodes searched on the opponent's time by ponder searches that hit", ponderNodes.get());
+		SearchStats last = last();
+		if(last != null) {
+			metric(text, "breakthrough_last_nodes", "gauge", "Nodes searched for the last move on our own time", last.nodes);
+			metric(text, "breakthrough_last_ponder_nodes", "gauge", "Nodes searched for the last move on the opponent's time", last.ponderNodes);
+			metric(text, "breakthrough_last_nodes_per_second", "gauge", "Search speed of the last move", last.nodesPerSecond());
+			metric(text, "breakthrough_last_depth", "gauge", "Deepest finished iteration of the last move", last.depth);
+			metric(text, "breakthrough_last_branching_factor", "gauge", "Effective branching factor of the last move", last.branchingFactor);
+			metric(text, "breakthrough_last_first_move_cutoff_rate", "gauge", "Share of cutoffs by the first move searched", last.firstMoveCutoffRate);
+			metric(text, "breakthrough_last_table_hit_rate", "gauge", "Share of transposition table lookups that hit", last.tableHitRate);
+			metric(text, "breakthrough_last_seconds", "gauge", "Time taken by the last move", last.millis / 1000.0);
+			metric(text, "breakthrough_last_playclock_used", "gauge", "Share of the playclock taken by the last move", last.playclockUsed());
+		}
+		return text.toString();
+	}
+
+	private static void metric(StringBuilder text, String name, String type, String help, double value) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		text.append(name).append(' ').append(value == (long) value ? Long.toString((long) value) : String.format(Locale.ROOT, "%.4f", value)).append('\n');
+	}
+}
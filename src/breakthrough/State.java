@@ -1,203 +1,521 @@
 package breakthrough;
 
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Random;
 
+/**
+ * Bitboard representation of a breakthrough position.
+ * Square (x, y) of the board, with 1 <= x <= width and 1 <= y <= height, is bit (y - 1) * width + (x - 1).
+ * Boards of up to 64 cells fit in a single long per color, larger boards (9x9) keep the
+ * cells from 64 and up in a second "high" word.
+ */
 public class State {
 	
-	public class SPawn {
-		public boolean isWhite; 	// Is the pawn white or not?
-		public boolean isDead;		// True if the pawn is on the dead stack
-		public int x;				// The pawn x coordinate on the board
-		public int y;				// The pawn y coordinate on the board
-		
-		public SPawn(boolean isWhite, boolean isDead, int x, int y) {
-			this.isWhite = isWhite;
-			this.isDead = isDead;
-			this.x = x;
-			this.y = y;
-		}
-	}
-	
-	public SPawn[][] board;
+	public final int width, height;		// Dimensions of the board (without padding)
+	public final int size;				// Number of cells on the board
+	public final boolean isWide;		// True if the board has more than 64 cells and the high words are in use
+	public long white, black;			// Pawns of each color on cells 0 - 63
+	public long whiteHigh, blackHigh;	// Pawns of each color on cells 64 and up
 	public boolean isWhiteTurn;
-	public boolean isTerminal;
-	public ArrayList<SPawn> blackList;
-	public ArrayList<SPawn> whiteList;
-	public Stack<SPawn> blackDeadStack;
-	public Stack<SPawn> whiteDeadStack;
-	public Stack<int[]> moveStack;
+	public boolean isTerminal;			// True if the last move brought a pawn to the far side of the board
 	public int[][] whiteGrid;
 	public int[][] blackGrid;
-	ArrayList<int[]> legalMoves;
-	public boolean isWinningMove = false;
-
+	
+	private final long boardMask, boardMaskHigh;				// All cells of the board
+	private final long notLeftFile, notLeftFileHigh;			// All cells except the ones with x == 1
+	private final long notRightFile, notRightFileHigh;			// All cells except the ones with x == width
+	private final long whiteGoal, whiteGoalHigh;				// The row white is trying to reach (y == height)
+	private final long blackGoal;								// The row black is trying to reach (y == 1), always in the low word
+	private final long whiteLastRanks, whiteLastRanksHigh;		// The two rows closest to white's goal
+	private final long blackLastRanks;							// The two rows closest to black's goal, always in the low word
+	private final int[] threats = new int[MAX_MOVES];			// Scratch buffer of threatensWin
+	private final int[] whiteValue, blackValue;					// Grid values by cell
+	private final ThreatAnalyzer threatAnalyzer;				// Cone masks of the board, shared by the copies
+	private final int[] moveStack;								// Moves made so far, packed with packMove, so we can rewind them
+	private int moveCount;
+	private long zobristKey;									// Hash of the pawn placement and the player to move
+	private int whiteScore, blackScore;							// Sum of the grid values of each color's pawns
+	private int whitePawns, blackPawns;							// Number of pawns of each color on the board
+	
+	public static final int CAPTURE = 1 << 14;					// Set on a packed move that takes an enemy pawn
+	public static final int MAX_MOVES = 64;						// At most three moves for each of the 2 * 9 pawns
+	
+	// Zobrist keys, one per cell and color plus one that is in the hash when it is black's turn.
+	// Fixed seed so every State (and every thread) agrees on the key of a position.
+	private static final long[] WHITE_KEYS = new long[128];
+	private static final long[] BLACK_KEYS = new long[128];
+	private static final long BLACK_TO_MOVE_KEY;
+	static {
+		Random random = new Random(0x5EEDL);
+		for(int sq = 0; sq < WHITE_KEYS.length; sq++) {
+			WHITE_KEYS[sq] = random.nextLong();
+			BLACK_KEYS[sq] = random.nextLong();
+		}
+		BLACK_TO_MOVE_KEY = random.nextLong();
+	}
+	
 	public State(Pawn[][] board, boolean isWhiteTurn) {
 		this.isWhiteTurn = isWhiteTurn;
-		whiteDeadStack = new Stack<>();
-		blackDeadStack = new Stack<>();
-		moveStack = new Stack<>();
-		whiteList = new ArrayList<>();
-		blackList = new ArrayList<>();
-		convertToSpawnBoard(board);
+		height = board.length - 2;
+		width = board[0].length - 2;
+		size = width * height;
+		isWide = size > 64;
+		boardMask = cells(0, 0, width - 1, 0, height - 1);
+		boardMaskHigh = cells(1, 0, width - 1, 0, height - 1);
+		notLeftFile = cells(0, 1, width - 1, 0, height - 1);
+		notLeftFileHigh = cells(1, 1, width - 1, 0, height - 1);
+		notRightFile = cells(0, 0, width - 2, 0, height - 1);
+		notRightFileHigh = cells(1, 0, width - 2, 0, height - 1);
+		whiteGoal = cells(0, 0, width - 1, height - 1, height - 1);
+		whiteGoalHigh = cells(1, 0, width - 1, height - 1, height - 1);
+		blackGoal = cells(0, 0, width - 1, 0, 0);
+		whiteLastRanks = cells(0, 0, width - 1, height - 2, height - 1);
+		whiteLastRanksHigh = cells(1, 0, width - 1, height - 2, height - 1);
+		blackLastRanks = cells(0, 0, width - 1, 0, 1);
+		moveStack = new int[4 * width * height];				// Every move advances a pawn one row, so a game can't be longer than this
+		threatAnalyzer = new ThreatAnalyzer(width, height);
+		convertToBitboards(board);
 		whiteGrid = makeGridWhite(board.length, board[0].length);
 		blackGrid = makeGridBlack(board.length, board[0].length);
+		whiteValue = new int[size];
+		blackValue = new int[size];
+		for(int sq = 0; sq < size; sq++) {
+			whiteValue[sq] = whiteGrid[sq % width + 1][sq / width + 1];
+			blackValue[sq] = blackGrid[sq % width + 1][sq / width + 1];
+		}
+		isTerminal = ((white & whiteGoal) | (whiteHigh & whiteGoalHigh) | (black & blackGoal)) != 0;
+		if(!isWhiteTurn)
+			zobristKey ^= BLACK_TO_MOVE_KEY;
+		computeScores();
 	}
 	
-	private void convertToSpawnBoard(Pawn[][] board) {
-		this.board = new SPawn[board.length][board[0].length];
-		
+	/**
+	 * Copy of the state, sharing only the read only tables, so it can be searched on another thread
+	 */
+	public State(State state) {
+		width = state.width;
+		height = state.height;
+		size = state.size;
+		isWide = state.isWide;
+		white = state.white;
+		black = state.black;
+		whiteHigh = state.whiteHigh;
+		blackHigh = state.blackHigh;
+		isWhiteTurn = state.isWhiteTurn;
+		isTerminal = state.isTerminal;
+		whiteGrid = state.whiteGrid;
+		blackGrid = state.blackGrid;
+		boardMask = state.boardMask;
+		boardMaskHigh = state.boardMaskHigh;
+		notLeftFile = state.notLeftFile;
+		notLeftFileHigh = state.notLeftFileHigh;
+		notRightFile = state.notRightFile;
+		notRightFileHigh = state.notRightFileHigh;
+		whiteGoal = state.whiteGoal;
+		whiteGoalHigh = state.whiteGoalHigh;
+		blackGoal = state.blackGoal;
+		whiteLastRanks = state.whiteLastRanks;
+		whiteLastRanksHigh = state.whiteLastRanksHigh;
+		blackLastRanks = state.blackLastRanks;
+		whiteValue = state.whiteValue;
+		blackValue = state.blackValue;
+		threatAnalyzer = state.threatAnalyzer;
+		moveStack = state.moveStack.clone();
+		moveCount = state.moveCount;
+		zobristKey = state.zobristKey;
+		whiteScore = state.whiteScore;
+		blackScore = state.blackScore;
+		whitePawns = state.whitePawns;
+		blackPawns = state.blackPawns;
+	}
+	
+	/**
+	 * @return the bits of the given word (0 for low, 1 for high) covering the cells x0..x1, y0..y1 (zero based)
+	 */
+	private long cells(int word, int x0, int x1, int y0, int y1) {
+		long mask = 0;
+		for(int y = y0; y <= y1; y++) {
+			for(int x = x0; x <= x1; x++) {
+				int sq = y * width + x - 64 * word;
+				if(sq >= 0 && sq < 64)
+					mask |= 1L << sq;
+			}
+		}
+		return mask;
+	}
+	
+	private void convertToBitboards(Pawn[][] board) {
 		for(int i = 1; i < board.length - 1; i++) {
 			for(int j = 1; j < board[0].length - 1; j++) {
-				if(board[i][j] != null){
-					SPawn pawn = board[i][j].equals(Pawn.WHITE) ? new SPawn(true, false, j, i) : new SPawn(false, false, j, i);
-					this.board[i][j] = pawn;
-					ArrayList<SPawn> list = pawn.isWhite ? whiteList : blackList;
-					list.add(pawn);
-				}
+				if(board[i][j] != null)
+					toggle(board[i][j].equals(Pawn.WHITE), square(j, i));
 			}
 		}
 	}
 	
-	public ArrayList<int[]> legalMoves() {
-		if(legalMoves == null){
-			legalMoves = new ArrayList<int[]>();
-			ArrayList<SPawn> pawnList = isWhiteTurn ? whiteList : blackList; 	// Get the pawns that belong to the player
-			for(SPawn pawn : pawnList) {
-				if(!pawn.isDead)
-					addPawnMovesToList(pawn, legalMoves);			// If the pawn is not dead then we can include actions for it
-			}
+	/**
+	 * Sums the evaluation terms from scratch, successorState and rewindState keep them up to date after that
+	 */
+	private void computeScores() {
+		whiteScore = blackScore = 0;
+		for(long bits = white; bits != 0; bits &= bits - 1)
+			whiteScore += whiteValue[Long.numberOfTrailingZeros(bits)];
+		for(long bits = whiteHigh; bits != 0; bits &= bits - 1)
+			whiteScore += whiteValue[64 + Long.numberOfTrailingZeros(bits)];
+		for(long bits = black; bits != 0; bits &= bits - 1)
+			blackScore += blackValue[Long.numberOfTrailingZeros(bits)];
+		for(long bits = blackHigh; bits != 0; bits &= bits - 1)
+			blackScore += blackValue[64 + Long.numberOfTrailingZeros(bits)];
+		whitePawns = Long.bitCount(white) + Long.bitCount(whiteHigh);
+		blackPawns = Long.bitCount(black) + Long.bitCount(blackHigh);
+	}
+	
+	public int square(int x, int y) {
+		return (y - 1) * width + (x - 1);
+	}
+	
+	public static int packMove(int from, int to, boolean isCapture) {
+		return from | to << 7 | (isCapture ? CAPTURE : 0);
+	}
+	
+	/**
+	 * @return the move {x1, y1, x2, y2} packed into an int, with the capture flag set if it takes a pawn
+	 */
+	public int packMove(int[] move) {
+		int to = square(move[2], move[3]);
+		return packMove(square(move[0], move[1]), to, isOccupied(to, !isWhiteTurn));
+	}
+	
+	/**
+	 * @return the packed move as {x1, y1, x2, y2}
+	 */
+	public int[] unpackMove(int move) {
+		int from = moveFrom(move), to = moveTo(move);
+		return new int[] {from % width + 1, from / width + 1, to % width + 1, to / width + 1};
+	}
+	
+	public static int moveFrom(int move) {
+		return move & 0x7F;
+	}
+	
+	public static int moveTo(int move) {
+		return (move >>> 7) & 0x7F;
+	}
+	
+	public boolean isOccupied(int sq, boolean byWhite) {
+		if(sq < 64)
+			return ((byWhite ? white : black) & 1L << sq) != 0;
+		return ((byWhite ? whiteHigh : blackHigh) & 1L << (sq - 64)) != 0;
+	}
+	
+	/**
+	 * Adds or removes a pawn on the given cell, keeping the zobrist key up to date
+	 */
+	private void toggle(boolean isWhitePawn, int sq) {
+		zobristKey ^= isWhitePawn ? WHITE_KEYS[sq] : BLACK_KEYS[sq];
+		if(sq < 64) {
+			if(isWhitePawn)
+				white ^= 1L << sq;
+			else
+				black ^= 1L << sq;
 		}
-		return legalMoves;
+		else if(isWhitePawn)
+			whiteHigh ^= 1L << (sq - 64);
+		else
+			blackHigh ^= 1L << (sq - 64);
+	}
+	
+	/**
+	 * Generates the legal moves of the player to move, packed as by packMove, captures first
+	 * @param moves buffer of at least MAX_MOVES entries that receives the moves
+	 * @return the number of moves
+	 */
+	public int legalMoves(int[] moves) {
+		return generate(moves, -1L, -1L, -1L, -1L);
+	}
+	
+	/**
+	 * Fills the buffer with the captures and the moves onto the two rows closest to the goal,
+	 * the moves quiescence search follows. Captures come first.
+	 * @return the number of moves
+	 */
+	public int forcingMoves(int[] moves) {
+		if(isWhiteTurn)
+			return generate(moves, -1L, -1L, whiteLastRanks, whiteLastRanksHigh);
+		return generate(moves, -1L, -1L, blackLastRanks, 0);
+	}
+	
+	/**
+	 * @return true if the move of the player to move is one forcingMoves would generate
+	 */
+	public boolean isForcing(int move) {
+		if((move & CAPTURE) != 0)
+			return true;
+		int row = moveTo(move) / width;
+		return isWhiteTurn ? row >= height - 2 : row <= 1;
+	}
+	
+	/**
+	 * @return true if the given player could move a pawn onto its goal if it were its turn
+	 */
+	public boolean threatensWin(boolean byWhite) {
+		boolean isWhiteTurn = this.isWhiteTurn;
+		this.isWhiteTurn = byWhite;
+		int count = byWhite ? generate(threats, whiteGoal, whiteGoalHigh, whiteGoal, whiteGoalHigh) : generate(threats, blackGoal, 0, blackGoal, 0);
+		this.isWhiteTurn = isWhiteTurn;
+		return count > 0;
 	}
 	
-	private void addPawnMovesToList(SPawn pawn, ArrayList<int[]> moves) {
-		int upDown = pawn.isWhite ? 1 : -1;				// If white pawn moves it moves upwards, else if black pawn it moves downwards
-		if((pawn.isWhite && pawn.y + 1 > board.length - 2) || !pawn.isWhite && pawn.y - 1 < 1)
-			return;																// If move will move pawn out of board then there is no legal move
-		if(board[pawn.y + upDown][pawn.x - 1] != null && board[pawn.y + upDown][pawn.x - 1].isWhite != pawn.isWhite) {
-			moves.add(new int[] {pawn.x, pawn.y, pawn.x - 1, pawn.y + upDown});		// Moving the pawn diagonally left if there is an enemy pawn there
+	/**
+	 * Generates the moves of the player to move, captures only onto the capture cells and forward moves only onto the push cells
+	 */
+	private int generate(int[] moves, long captures, long capturesHigh, long pushes, long pushesHigh) {
+		int count = 0;
+		int w = width;
+		long empty = ~(white | black) & boardMask & pushes;
+		if(!isWide) {
+			if(isWhiteTurn) {
+				count = addMoves(((white & notLeftFile) << (w - 1)) & black & captures, 0, w - 1, true, moves, count);	// Diagonally left onto an enemy pawn
+				count = addMoves(((white & notRightFile) << (w + 1)) & black & captures, 0, w + 1, true, moves, count);	// Diagonally right onto an enemy pawn
+				count = addMoves((white << w) & empty, 0, w, false, moves, count);									// Forward onto an empty tile
+			} else {
+				count = addMoves(((black & notLeftFile) >>> (w + 1)) & white & captures, 0, -w - 1, true, moves, count);
+				count = addMoves(((black & notRightFile) >>> (w - 1)) & white & captures, 0, -w + 1, true, moves, count);
+				count = addMoves((black >>> w) & empty, 0, -w, false, moves, count);
+			}
+			return count;
 		}
-		if(board[pawn.y + upDown][pawn.x + 1] != null && board[pawn.y + upDown][pawn.x + 1].isWhite != pawn.isWhite) {
-			moves.add(new int[] {pawn.x, pawn.y, pawn.x + 1, pawn.y + upDown});		// Moving the pawn diagonally right if there is an enemy pawn there
+		long emptyHigh = ~(whiteHigh | blackHigh) & boardMaskHigh & pushesHigh;
+		if(isWhiteTurn) {
+			long left = white & notLeftFile, leftHigh = whiteHigh & notLeftFileHigh;
+			long right = white & notRightFile, rightHigh = whiteHigh & notRightFileHigh;
+			count = addMoves((left << (w - 1)) & black & captures, 0, w - 1, true, moves, count);
+			count = addMoves(((leftHigh << (w - 1)) | (left >>> (65 - w))) & blackHigh & capturesHigh, 64, w - 1, true, moves, count);
+			count = addMoves((right << (w + 1)) & black & captures, 0, w + 1, true, moves, count);
+			count = addMoves(((rightHigh << (w + 1)) | (right >>> (63 - w))) & blackHigh & capturesHigh, 64, w + 1, true, moves, count);
+			count = addMoves((white << w) & empty, 0, w, false, moves, count);
+			count = addMoves(((whiteHigh << w) | (white >>> (64 - w))) & emptyHigh, 64, w, false, moves, count);
+		} else {
+			long left = black & notLeftFile, leftHigh = blackHigh & notLeftFileHigh;
+			long right = black & notRightFile, rightHigh = blackHigh & notRightFileHigh;
+			count = addMoves(((left >>> (w + 1)) | (leftHigh << (63 - w))) & white & captures, 0, -w - 1, true, moves, count);
+			count = addMoves((leftHigh >>> (w + 1)) & whiteHigh & capturesHigh, 64, -w - 1, true, moves, count);
+			count = addMoves(((right >>> (w - 1)) | (rightHigh << (65 - w))) & white & captures, 0, -w + 1, true, moves, count);
+			count = addMoves((rightHigh >>> (w - 1)) & whiteHigh & capturesHigh, 64, -w + 1, true, moves, count);
+			count = addMoves(((black >>> w) | (blackHigh << (64 - w))) & empty, 0, -w, false, moves, count);
+			count = addMoves((blackHigh >>> w) & emptyHigh, 64, -w, false, moves, count);
 		}
-		if(board[pawn.y + upDown][pawn.x] == null) {
-			moves.add(new int[] {pawn.x, pawn.y, pawn.x, pawn.y + upDown});			// Moving the pawn to the front tile if there is no pawn there
+		return count;
+	}
+	
+	/**
+	 * Adds a move for every bit in targets, the pawn comes from the target cell minus delta
+	 * @return the new number of moves in the buffer
+	 */
+	private static int addMoves(long targets, int base, int delta, boolean isCapture, int[] moves, int count) {
+		int flag = isCapture ? CAPTURE : 0;
+		while(targets != 0) {
+			int to = base + Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			moves[count++] = (to - delta) | to << 7 | flag;
 		}
+		return count;
 	}
 	
+	/**
+	 * @return true if the player to move has at least one legal move
+	 */
+	public boolean hasLegalMoves() {
+		int w = width;
+		long empty = ~(white | black) & boardMask;
+		long emptyHigh = ~(whiteHigh | blackHigh) & boardMaskHigh;
+		if(isWhiteTurn) {
+			long left = white & notLeftFile, right = white & notRightFile;
+			if((((left << (w - 1)) & black) | ((right << (w + 1)) & black) | ((white << w) & empty)) != 0)
+				return true;
+			return isWide && ((((whiteHigh & notLeftFileHigh) << (w - 1) | left >>> (65 - w)) & blackHigh)
+					| (((whiteHigh & notRightFileHigh) << (w + 1) | right >>> (63 - w)) & blackHigh)
+					| ((whiteHigh << w | white >>> (64 - w)) & emptyHigh)) != 0;
+		}
+		long left = black & notLeftFile, right = black & notRightFile;
+		long leftHigh = blackHigh & notLeftFileHigh, rightHigh = blackHigh & notRightFileHigh;
+		if(!isWide)
+			return (((left >>> (w + 1)) & white) | ((right >>> (w - 1)) & white) | ((black >>> w) & empty)) != 0;
+		return (((left >>> (w + 1) | leftHigh << (63 - w)) & white) | ((leftHigh >>> (w + 1)) & whiteHigh)
+				| ((right >>> (w - 1) | rightHigh << (65 - w)) & white) | ((rightHigh >>> (w - 1)) & whiteHigh)
+				| ((black >>> w | blackHigh << (64 - w)) & empty) | ((blackHigh >>> w) & emptyHigh)) != 0;
+	}
+
+	/**
+	 * @return the number of rows the most advanced pawn of the color still has to go, height if it has no pawns
+	 */
+	public int distanceToGoal(boolean ofWhite) {
+		if(ofWhite) {
+			if((white | whiteHigh) == 0)
+				return height;
+			int sq = whiteHigh != 0 ? 127 - Long.numberOfLeadingZeros(whiteHigh) : 63 - Long.numberOfLeadingZeros(white);
+			return height - 1 - sq / width;
+		}
+		if((black | blackHigh) == 0)
+			return height;
+		int sq = black != 0 ? Long.numberOfTrailingZeros(black) : 64 + Long.numberOfTrailingZeros(blackHigh);
+		return sq / width;
+	}
+
+	/**
+	 * Makes a move given as {x1, y1, x2, y2}, as it comes from the game controller
+	 */
 	public State successorState(int[] move) {
-		Stack<SPawn> deadStack = isWhiteTurn ? blackDeadStack : whiteDeadStack;
-		SPawn killedPawn = board[move[3]][move[2]];
-		SPawn movedPawn = board[move[1]][move[0]];
-		legalMoves = null;									// legalMoves for previous state do not apply to the new state
+		return successorState(packMove(move));
+	}
+	
+	/**
+	 * Makes a packed move as generated by legalMoves
+	 */
+	public State successorState(int move) {
+		int from = moveFrom(move), to = moveTo(move);
 		
-		if(killedPawn != null) {
-			killedPawn.isDead = true;						// Mark the killed pawn as dead
-		}
-		if(move[3] == 1 || move[3] == board.length - 2) {
-			isTerminal = true;// If a pawn is being moved to the bottom row or the top row, then we have a terminal state
-			isWinningMove = true;
+		if((move & CAPTURE) != 0) {
+			toggle(!isWhiteTurn, to);						// Remove the killed pawn
+			if(isWhiteTurn) {
+				blackScore -= blackValue[to];
+				blackPawns--;
+			} else {
+				whiteScore -= whiteValue[to];
+				whitePawns--;
+			}
 		}
-		deadStack.push(killedPawn);							// Pushing the pawn that is on conquered tile on dead stack (Could be null)
-		board[move[3]][move[2]] = movedPawn;  				// Moving the pawn according to the action
-		board[move[1]][move[0]] = null; 					// Removing the pawn from it previous tile
-		movedPawn.x = move[2];								// Updating the pawn x coordinate
-		movedPawn.y = move[3];								// Updating the pawn y coordinate
-		moveStack.push(move);								// Store move so we can rewind it later
+		toggle(isWhiteTurn, from);							// Moving the pawn according to the action
+		toggle(isWhiteTurn, to);
+		if(isWhiteTurn)
+			whiteScore += whiteValue[to] - whiteValue[from];
+		else
+			blackScore += blackValue[to] - blackValue[from];
+		if(to < width || to >= size - width)
+			isTerminal = true;								// If a pawn is being moved to the bottom row or the top row, then we have a terminal state
+		moveStack[moveCount++] = move;						// Store move so we can rewind it later
 		isWhiteTurn = !isWhiteTurn;							// Switch player
+		zobristKey ^= BLACK_TO_MOVE_KEY;
 		return this;
 	}
 	
 	public State rewindState() {
-		// Get the tile that was moved to as it were before move
-		SPawn killedPawn = isWhiteTurn ? whiteDeadStack.pop() : blackDeadStack.pop();
-		int[] move = moveStack.pop();						// Pop the move of the stack
-		SPawn movedPawn = board[move[3]][move[2]];			// Get the pawn that was moved with the action
-		legalMoves = null;									// Legal moves of the successor state do not apply to the parent state
+		int move = moveStack[--moveCount];					// Pop the move of the stack
+		int from = moveFrom(move), to = moveTo(move);
+		isWhiteTurn = !isWhiteTurn;							// Switch player
+		zobristKey ^= BLACK_TO_MOVE_KEY;
+		isTerminal = false;									// Nobody moves out of a terminal state, so the previous state was not terminal
 		
-		if(killedPawn != null) {
-			killedPawn.isDead = false;						// Mark the killed pawn as alive
+		toggle(isWhiteTurn, to);							// Undoing the move
+		toggle(isWhiteTurn, from);
+		if(isWhiteTurn)
+			whiteScore -= whiteValue[to] - whiteValue[from];
+		else
+			blackScore -= blackValue[to] - blackValue[from];
+		if((move & CAPTURE) != 0) {
+			toggle(!isWhiteTurn, to);						// Restore the killed pawn
+			if(isWhiteTurn) {
+				blackScore += blackValue[to];
+				blackPawns++;
+			} else {
+				whiteScore += whiteValue[to];
+				whitePawns++;
+			}
 		}
-		if(isTerminal)
-			isTerminal = false;								// If the state was a terminal then the previous state should not be terminal
-		
-		board[move[1]][move[0]] = movedPawn; 				// Undoing the move
-		board[move[3]][move[2]] = killedPawn;				// Restore the killed pawn
-		movedPawn.x = move[0];								// Updating the pawn x coordinate
-		movedPawn.y = move[1];								// Updating the pawn y coordinate
-		isWhiteTurn = !isWhiteTurn;							// Switch player
 		return this;
 	}
 	
-	public boolean isTerminalState() {
-		if(!isTerminal) {									// If there are no pawns in a terminal position
-			if(legalMoves == null)
-				legalMoves();							// Get the legalMoves
-			return legalMoves.isEmpty();					// If there are no legal moves then we have a terminal state
-		}
-		return true;
+	/**
+	 * Replaces the pawns and the player to move, for tools that visit positions without
+	 * playing up to them. The moves made so far are forgotten.
+	 */
+	public void setPosition(long white, long whiteHigh, long black, long blackHigh, boolean isWhiteTurn) {
+		this.white = this.black = this.whiteHigh = this.blackHigh = 0;
+		zobristKey = isWhiteTurn ? 0 : BLACK_TO_MOVE_KEY;
+		for(long bits = white; bits != 0; bits &= bits - 1)
+			toggle(true, Long.numberOfTrailingZeros(bits));
+		for(long bits = whiteHigh; bits != 0; bits &= bits - 1)
+			toggle(true, 64 + Long.numberOfTrailingZeros(bits));
+		for(long bits = black; bits != 0; bits &= bits - 1)
+			toggle(false, Long.numberOfTrailingZeros(bits));
+		for(long bits = blackHigh; bits != 0; bits &= bits - 1)
+			toggle(false, 64 + Long.numberOfTrailingZeros(bits));
+		this.isWhiteTurn = isWhiteTurn;
+		isTerminal = ((white & whiteGoal) | (whiteHigh & whiteGoalHigh) | (black & blackGoal)) != 0;
+		moveCount = 0;
+		computeScores();
 	}
-	
-	public int eval() {
-		if(isWinningMove) {
-			isWinningMove = false;
-			return Integer.MAX_VALUE;
-		}
-
 
-		int white = 0;
-		int black = 0;
-		for(SPawn p : whiteList){
-			if(!p.isDead){
-				white += whiteGrid[p.x][p.y];
-			}
-		}
-		for(SPawn p : blackList){
-			if(!p.isDead){
-				black += blackGrid[p.x][p.y];
-			}
-		}
-		int wbSize = whiteList.size() - blackList.size();
-		if(wbSize < 0) {
-			wbSize *= -10;
-			black += wbSize;
-		}
-		else{
-			wbSize *= 10;
-			white += wbSize;
+	/**
+	 * @return the position the game description starts from, two rows of pawns on each side and white to move
+	 */
+	public static State startPosition(int width, int height) {
+		Pawn[][] board = new Pawn[height + 2][width + 2];		// Padded by one empty row and column on each side
+		for(int x = 1; x <= width; x++) {
+			board[1][x] = Pawn.WHITE;
+			board[2][x] = Pawn.WHITE;
+			board[height][x] = Pawn.BLACK;
+			board[height - 1][x] = Pawn.BLACK;
 		}
+		return new State(board, true);
+	}
 
-		if(isWhiteTurn){
-			return white - black;
-		}
-		return black - white;
+	/**
+	 * @return 64 bit zobrist hash of the position, maintained incrementally by successorState and rewindState
+	 */
+	public long getZobristKey() {
+		return zobristKey;
+	}
+	
+	public boolean isTerminalState() {
+		return isTerminal || !hasLegalMoves();				// If there are no legal moves then we have a terminal state
+	}
+	
+	/**
+	 * @return the score of a position that is won or lost before the game is over, for the player
+	 * to move, 0 if it is still open, see ThreatAnalyzer
+	 */
+	public int decidedScore() {
+		return threatAnalyzer.decidedScore(this);
+	}
+	
+	/**
+	 * Positional score plus 10 for every pawn more than the opponent, for the player to move.
+	 * Both terms are kept up to date by successorState and rewindState. A position decided by a
+	 * runner or a pawn about to step onto the goal gets its decided score instead, which takes
+	 * a scan of the pawns against their cones in ThreatAnalyzer on every call.
+	 */
+	public int eval() {
+		if(isTerminal)
+			return -Integer.MAX_VALUE;						// The last move won the game, the player to move has lost
+		int decided = threatAnalyzer.decidedScore(this);
+		if(decided != 0)
+			return decided;
+		int score = whiteScore - blackScore + 10 * (whitePawns - blackPawns);
+		return isWhiteTurn ? score : -score;
 	}
 	
 	public Pawn[][] getPawnBoard() {
-		Pawn[][] pBoard = new Pawn[board.length][board[0].length];
-		for(int i = 0; i < board.length; i++) {
-			for(int j = 0; j < board[0].length; j++) {
-				if(board[i][j] != null)
-					pBoard[i][j] = board[i][j].isWhite ? Pawn.WHITE : Pawn.BLACK;
-				else
-					pBoard[i][j] = null;
-			}
+		Pawn[][] pBoard = new Pawn[height + 2][width + 2];
+		for(int sq = 0; sq < size; sq++) {
+			if(isOccupied(sq, true))
+				pBoard[sq / width + 1][sq % width + 1] = Pawn.WHITE;
+			else if(isOccupied(sq, false))
+				pBoard[sq / width + 1][sq % width + 1] = Pawn.BLACK;
 		}
 		return pBoard;
 	}
 	
 	public int eval2() {
-		SPawn mostAdvancedBlack = blackList.get(0), mostAdvancedWhite = whiteList.get(0);
-		for(SPawn pawn : blackList) {
-			if(pawn.y < mostAdvancedBlack.y)
-				mostAdvancedBlack = pawn;
-		}
-		for(SPawn pawn : whiteList) {
-			if(pawn.y > mostAdvancedWhite.y)
-				mostAdvancedWhite = pawn;
-		}
-		return 50 - ((mostAdvancedBlack.y - 1) + ((board.length - 2) - mostAdvancedWhite.y));
+		int mostAdvancedWhite = 1, mostAdvancedBlack = height;	// Rows of the most advanced pawns
+		if(whiteHigh != 0)
+			mostAdvancedWhite = (127 - Long.numberOfLeadingZeros(whiteHigh)) / width + 1;
+		else if(white != 0)
+			mostAdvancedWhite = (63 - Long.numberOfLeadingZeros(white)) / width + 1;
+		if(black != 0)
+			mostAdvancedBlack = Long.numberOfTrailingZeros(black) / width + 1;
+		else if(blackHigh != 0)
+			mostAdvancedBlack = (64 + Long.numberOfTrailingZeros(blackHigh)) / width + 1;
+		return 50 - ((mostAdvancedBlack - 1) + (height - mostAdvancedWhite));
 	}
 	
 	public static int[][] makeGridWhite(int x, int y) {
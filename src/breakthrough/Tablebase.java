@@ -0,0 +1,142 @@
+package breakthrough;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Exact values of every position with few pawns, read from a file made by TablebaseGenerator.
+ * The file is memory mapped, so only the pages the search touches are ever read.
+ * <p>
+ * The file holds one table per material signature (white pawns, black pawns), both counts
+ * from 0 to maxPawns. A position is found by ranking the cells of its white pawns as a
+ * combination of the board cells, then the cells of its black pawns as a combination of the
+ * cells left over, see index(). Every position takes a byte: 0 for unknown, DRAW, or the
+ * distance to the end of the game in plies plus one. The player to move wins if the distance
+ * is odd and loses if it is even.
+ */
+public class Tablebase {
+
+	public static final int UNKNOWN = 0;
+	public static final int DRAW = 255;					// The player to move gets stuck sooner or later
+	public static final int MAX_DISTANCE = 253;
+	public static final int WIN_SCORE = Integer.MAX_VALUE - 1000;	// Score of a win in 0 plies, a win in d plies scores d less
+
+	static final int MAGIC = 0x42544231;				// "BTB1"
+	static final int HEADER_BYTES = 16;					// Magic, width, height, maxPawns
+	static final int MAX_CELLS = 81;
+	static final int MAX_PAWNS = 18;
+	private static final long[][] BINOMIAL = new long[MAX_CELLS + 1][MAX_PAWNS + 1];
+	static {
+		for(int n = 0; n <= MAX_CELLS; n++) {
+			BINOMIAL[n][0] = 1;
+			for(int k = 1; k <= Math.min(n, MAX_PAWNS); k++)
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k < n ? BINOMIAL[n - 1][k] : 0);
+		}
+	}
+
+	public final int width, height, maxPawns;
+	private final MappedByteBuffer buffer;
+	private final long[][] offsets;						// Start of the table of each signature in the file
+
+	public Tablebase(String path) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(path, "r")) {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());	// The mapping outlives the file
+		}
+		if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a tablebase: " + path);
+		width = buffer.getInt(4);
+		height = buffer.getInt(8);
+		maxPawns = buffer.getInt(12);
+		offsets = offsets(width * height, maxPawns);
+		if(offsets[maxPawns + 1][0] != buffer.capacity())
+			throw new IOException("Tablebase has the wrong length: " + path);
+	}
+
+	/**
+	 * @return true if the table holds the position, it has to be on a board of the table's size
+	 */
+	public boolean covers(State state) {
+		return Long.bitCount(state.white) + Long.bitCount(state.whiteHigh) <= maxPawns
+				&& Long.bitCount(state.black) + Long.bitCount(state.blackHigh) <= maxPawns;
+	}
+
+	/**
+	 * @return the byte stored for a covered position
+	 */
+	public int value(State state) {
+		int whitePawns = Long.bitCount(state.white) + Long.bitCount(state.whiteHigh);
+		int blackPawns = Long.bitCount(state.black) + Long.bitCount(state.blackHigh);
+		return buffer.get((int) (offsets[whitePawns][blackPawns] + index(state))) & 0xFF;
+	}
+
+	/**
+	 * @return the value of a covered position for the player to move: 0 for a draw, WIN_SCORE minus
+	 * the distance for a win and the negation of that for a loss
+	 */
+	public int score(State state) {
+		return score(value(state));
+	}
+
+	public static int score(int value) {
+		if(value == DRAW || value == UNKNOWN)
+			return 0;
+		int distance = value - 1;
+		return (distance & 1) != 0 ? WIN_SCORE - distance : -(WIN_SCORE - distance);
+	}
+
+	/**
+	 * @return the position of the state in the table of its signature
+	 */
+	static long index(State state) {
+		long whiteRank = 0, blackRank = 0;
+		int whitePawns = 0, blackPawns = 0;
+		for(long bits = state.white; bits != 0; bits &= bits - 1)
+			whiteRank += BINOMIAL[Long.numberOfTrailingZeros(bits)][++whitePawns];
+		for(long bits = state.whiteHigh; bits != 0; bits &= bits - 1)
+			whiteRank += BINOMIAL[64 + Long.numberOfTrailingZeros(bits)][++whitePawns];
+		// Black pawns are ranked among the cells without a white pawn
+		for(long bits = state.black; bits != 0; bits &= bits - 1) {
+			int sq = Long.numberOfTrailingZeros(bits);
+			blackRank += BINOMIAL[sq - Long.bitCount(state.white & ((1L << sq) - 1))][++blackPawns];
+		}
+		int whiteLow = Long.bitCount(state.white);
+		for(long bits = state.blackHigh; bits != 0; bits &= bits - 1) {
+			int sq = Long.numberOfTrailingZeros(bits);
+			blackRank += BINOMIAL[64 + sq - whiteLow - Long.bitCount(state.whiteHigh & ((1L << sq) - 1))][++blackPawns];
+		}
+		long placement = whiteRank * BINOMIAL[state.size - whitePawns][blackPawns] + blackRank;
+		return 2 * placement + (state.isWhiteTurn ? 0 : 1);
+	}
+
+	/**
+	 * @return the number of pawn placements of a signature, each is in the table twice, once for each player to move
+	 */
+	static long placements(int size, int whitePawns, int blackPawns) {
+		return BINOMIAL[size][whitePawns] * BINOMIAL[size - whitePawns][blackPawns];
+	}
+
+	/**
+	 * @return C(n, k) for n up to MAX_CELLS and k up to MAX_PAWNS
+	 */
+	static long binomial(int n, int k) {
+		return k < 0 || k > n ? 0 : BINOMIAL[n][k];
+	}
+
+	/**
+	 * @return the file offset of the table of each signature, row maxPawns + 1 holds the file length
+	 */
+	static long[][] offsets(int size, int maxPawns) {
+		long[][] offsets = new long[maxPawns + 2][maxPawns + 1];
+		long offset = HEADER_BYTES;
+		for(int w = 0; w <= maxPawns; w++) {
+			for(int b = 0; b <= maxPawns; b++) {
+				offsets[w][b] = offset;
+				offset += 2 * placements(size, w, b);
+			}
+		}
+		offsets[maxPawns + 1][0] = offset;
+		return offsets;
+	}
+}
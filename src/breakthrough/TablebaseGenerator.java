@@ -0,0 +1,242 @@
+package breakthrough;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves every position with at most maxPawns pawns per side and writes the file read by Tablebase.
+ * Usage: TablebaseGenerator width height maxPawns file [threads]
+ * <p>
+ * Pawns only move forward, so no position can come back and the positions can be solved
+ * backwards from the end of the game in one sweep. A capture leads to a signature with one
+ * pawn less, so the signatures are solved in order of their total number of pawns. Within a
+ * signature a move advances the pawns by one row in total, so the positions are solved layer by
+ * layer from the most advanced placements down, the positions of a layer in parallel.
+ */
+public class TablebaseGenerator {
+
+	private static final int CHUNK = 1 << 14;			// Placements per task
+
+	private final int width, height, size, maxPawns, threads;
+	private final byte[][][] tables;					// Solved tables by white and black pawns
+
+	public TablebaseGenerator(int width, int height, int maxPawns, int threads) {
+		this.width = width;
+		this.height = height;
+		this.size = width * height;
+		this.maxPawns = maxPawns;
+		this.threads = threads;
+		if(size > Tablebase.MAX_CELLS || maxPawns > Math.min(Tablebase.MAX_PAWNS, 2 * width))
+			throw new IllegalArgumentException("No tablebase for " + maxPawns + " pawns on " + width + "x" + height);
+		if(Tablebase.offsets(size, maxPawns)[maxPawns + 1][0] > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The tables would not fit in a mapped file, use fewer pawns");
+		if(2 * maxPawns * (height - 1) > 255)
+			throw new IllegalArgumentException("Too many pawns to number the layers in a byte");
+		tables = new byte[maxPawns + 1][maxPawns + 1][];
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 4) {
+			System.err.println("Usage: TablebaseGenerator width height maxPawns file [threads]");
+			System.exit(1);
+		}
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		TablebaseGenerator generator = new TablebaseGenerator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), threads);
+		generator.generate();
+		generator.write(args[3]);
+	}
+
+	public void generate() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			for(int total = 0; total <= 2 * maxPawns; total++) {
+				for(int w = Math.max(0, total - maxPawns); w <= Math.min(total, maxPawns); w++) {
+					long start = System.currentTimeMillis();
+					solve(pool, w, total - w);
+					System.out.println(w + " white " + (total - w) + " black: " + tables[w][total - w].length + " positions in " + (System.currentTimeMillis() - start) + " ms");
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void solve(ExecutorService pool, final int whitePawns, final int blackPawns) throws Exception {
+		final long placements = Tablebase.placements(size, whitePawns, blackPawns);
+		final byte[] table = new byte[(int) (2 * placements)];
+		final byte[] layers = new byte[(int) placements];		// How far the pawns of each placement have advanced
+		tables[whitePawns][blackPawns] = table;
+		runChunks(pool, placements, new ChunkTask() {
+			@Override
+			public void run(Solver solver, int from, int to) {
+				for(int placement = from; placement < to; placement++)
+					layers[placement] = (byte) solver.layer(placement, whitePawns, blackPawns);
+			}
+		});
+		for(int layer = (whitePawns + blackPawns) * (height - 1); layer >= 0; layer--) {
+			final int current = layer;
+			runChunks(pool, placements, new ChunkTask() {
+				@Override
+				public void run(Solver solver, int from, int to) {
+					for(int placement = from; placement < to; placement++) {
+						if((layers[placement] & 0xFF) == current) {
+							table[2 * placement] = (byte) solver.solve(placement, whitePawns, blackPawns, true);
+							table[2 * placement + 1] = (byte) solver.solve(placement, whitePawns, blackPawns, false);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private interface ChunkTask {
+		void run(Solver solver, int from, int to);
+	}
+
+	/**
+	 * Splits the placements over the threads and waits for all of them, so a layer is done before the next one starts
+	 */
+	private void runChunks(ExecutorService pool, final long placements, final ChunkTask task) throws Exception {
+		List<Future<?>> running = new ArrayList<Future<?>>();
+		final int chunks = (int) ((placements + CHUNK - 1) / CHUNK);
+		final AtomicInteger next = new AtomicInteger();
+		for(int t = 0; t < threads; t++) {
+			running.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					Solver solver = new Solver();
+					for(int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement())
+						task.run(solver, chunk * CHUNK, (int) Math.min(placements, (long) (chunk + 1) * CHUNK));
+					return null;
+				}
+			}));
+		}
+		for(Future<?> future : running)
+			future.get();
+	}
+
+	/**
+	 * The scratch state and buffers of one thread
+	 */
+	private class Solver {
+		private final State state = new State(new Pawn[height + 2][width + 2], true);
+		private final int[] moves = new int[State.MAX_MOVES];
+		private final int[] whiteCells = new int[Tablebase.MAX_PAWNS];
+		private final int[] blackCells = new int[Tablebase.MAX_PAWNS];
+		private final int[] freeCells = new int[Tablebase.MAX_CELLS];
+		private final long[] bits = new long[4];			// white, whiteHigh, black, blackHigh
+
+		/**
+		 * Fills whiteCells and blackCells with the cells of a placement, the inverse of Tablebase.index
+		 */
+		private void unrank(long placement, int whitePawns, int blackPawns) {
+			long free = Tablebase.binomial(size - whitePawns, blackPawns);
+			unrankCombination(placement / free, whitePawns, size, whiteCells);
+			unrankCombination(placement % free, blackPawns, size - whitePawns, blackCells);
+			int count = 0, w = 0;
+			for(int sq = 0; sq < size; sq++) {
+				if(w < whitePawns && whiteCells[w] == sq)
+					w++;
+				else
+					freeCells[count++] = sq;
+			}
+			for(int i = 0; i < blackPawns; i++)
+				blackCells[i] = freeCells[blackCells[i]];
+		}
+
+		private void unrankCombination(long rank, int k, int n, int[] cells) {
+			int sq = n - 1;
+			for(int i = k; i >= 1; i--) {
+				while(Tablebase.binomial(sq, i) > rank)
+					sq--;
+				cells[i - 1] = sq;
+				rank -= Tablebase.binomial(sq, i);
+				sq--;
+			}
+		}
+
+		int layer(long placement, int whitePawns, int blackPawns) {
+			unrank(placement, whitePawns, blackPawns);
+			int layer = 0;
+			for(int i = 0; i < whitePawns; i++)
+				layer += whiteCells[i] / width;
+			for(int i = 0; i < blackPawns; i++)
+				layer += height - 1 - blackCells[i] / width;
+			return layer;
+		}
+
+		/**
+		 * @return the table value of the placement with the given player to move, every position it
+		 * leads to has to be solved already
+		 */
+		int solve(long placement, int whitePawns, int blackPawns, boolean isWhiteTurn) {
+			unrank(placement, whitePawns, blackPawns);
+			java.util.Arrays.fill(bits, 0);
+			for(int i = 0; i < whitePawns; i++)
+				bits[whiteCells[i] >> 6] |= 1L << whiteCells[i];
+			for(int i = 0; i < blackPawns; i++)
+				bits[2 + (blackCells[i] >> 6)] |= 1L << blackCells[i];
+			state.setPosition(bits[0], bits[1], bits[2], bits[3], isWhiteTurn);
+			if(state.isTerminal) {
+				boolean whiteWon = whitePawns > 0 && whiteCells[whitePawns - 1] >= size - width;
+				boolean blackWon = blackPawns > 0 && blackCells[0] < width;
+				return isWhiteTurn ? blackWon && !whiteWon ? 1 : Tablebase.UNKNOWN	// Lost in 0 plies, or a position no game reaches
+						: whiteWon && !blackWon ? 1 : Tablebase.UNKNOWN;
+			}
+			int count = state.legalMoves(moves);
+			if(count == 0)
+				return Tablebase.DRAW;
+			int win = Integer.MAX_VALUE, loss = 0;
+			boolean canDraw = false;
+			for(int i = 0; i < count; i++) {
+				int move = moves[i];
+				state.successorState(move);
+				int value;
+				if(state.isTerminal)
+					value = 1;												// The move wins on the spot
+				else {
+					int w = whitePawns - ((move & State.CAPTURE) != 0 && !isWhiteTurn ? 1 : 0);
+					int b = blackPawns - ((move & State.CAPTURE) != 0 && isWhiteTurn ? 1 : 0);
+					value = tables[w][b][(int) Tablebase.index(state)] & 0xFF;
+				}
+				state.rewindState();
+				if(value == Tablebase.UNKNOWN)
+					throw new IllegalStateException("Position reached before it was solved");
+				if(value == Tablebase.DRAW)
+					canDraw = true;
+				else if(((value - 1) & 1) == 0)
+					win = Math.min(win, value);								// The opponent loses in value - 1 plies
+				else
+					loss = Math.max(loss, value);
+			}
+			int distance = win != Integer.MAX_VALUE ? win : canDraw ? -1 : loss;	// The distance is one more than the opponent's
+			if(distance < 0)
+				return Tablebase.DRAW;
+			if(distance > Tablebase.MAX_DISTANCE)
+				throw new IllegalStateException("Game too long for the table format");
+			return distance + 1;
+		}
+	}
+
+	public void write(String path) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(maxPawns);
+			for(int w = 0; w <= maxPawns; w++) {
+				for(int b = 0; b <= maxPawns; b++)
+					out.write(tables[w][b]);
+			}
+		}
+	}
+}
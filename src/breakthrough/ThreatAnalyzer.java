@@ -0,0 +1,129 @@
+package breakthrough;
+
+/**
+ * Recognizes positions that are decided before the game is over: a pawn that can step onto
+ * its goal right now, or a runner no enemy pawn can stop that gets there before the opponent
+ * can reach its own goal.
+ * <p>
+ * A pawn moves sideways only when it captures, so an enemy pawn can only stop a runner from
+ * inside its cone: the cells ahead of it with |dx| <= dy + 1. A pawn with no enemy in its cone
+ * walks to the goal in as many moves as it has rows to go, and nothing can be done about it.
+ * The cones are precomputed per cell and color, in the bit layout of State.
+ * <p>
+ * A player with no legal move ends the game in a draw, so a race only counts when both sides
+ * provably keep a move until the runner lands. The runner always has one, since nothing can
+ * get in its way. The loser needs a pawn with enough empty cells straight ahead and nothing to
+ * capture beside them: the winner only pushes the runner, which never comes near the cells
+ * ahead of an enemy pawn, so that pawn can always step forward and never has to leave its column.
+ */
+public class ThreatAnalyzer {
+
+	private final int width, height;
+	private final long[] whiteCone, whiteConeHigh;	// Cells ahead of a white pawn on each cell that black could stop it from
+	private final long[] blackCone, blackConeHigh;
+
+	public ThreatAnalyzer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int size = width * height;
+		whiteCone = new long[size];
+		whiteConeHigh = new long[size];
+		blackCone = new long[size];
+		blackConeHigh = new long[size];
+		for(int sq = 0; sq < size; sq++) {
+			int x = sq % width, y = sq / width;
+			for(int cell = 0; cell < size; cell++) {
+				int dx = Math.abs(cell % width - x), dy = cell / width - y;
+				if(dy > 0 && dx <= dy + 1)
+					set(whiteCone, whiteConeHigh, sq, cell);
+				if(dy < 0 && dx <= -dy + 1)
+					set(blackCone, blackConeHigh, sq, cell);
+			}
+		}
+	}
+
+	private static void set(long[] cone, long[] coneHigh, int sq, int cell) {
+		if(cell < 64)
+			cone[sq] |= 1L << cell;
+		else
+			coneHigh[sq] |= 1L << (cell - 64);
+	}
+
+	/**
+	 * @return rows to go of the most advanced pawn of the color that can't be stopped, Integer.MAX_VALUE if there is none
+	 */
+	public int runnerDistance(State state, boolean ofWhite) {
+		if(ofWhite) {
+			// Most advanced first, so the first runner found is the fastest
+			for(long bits = state.whiteHigh; bits != 0; bits &= ~Long.highestOneBit(bits)) {
+				int sq = 127 - Long.numberOfLeadingZeros(bits);
+				if(isRunner(sq, whiteCone, whiteConeHigh, state.black, state.blackHigh))
+					return height - 1 - sq / width;
+			}
+			for(long bits = state.white; bits != 0; bits &= ~Long.highestOneBit(bits)) {
+				int sq = 63 - Long.numberOfLeadingZeros(bits);
+				if(isRunner(sq, whiteCone, whiteConeHigh, state.black, state.blackHigh))
+					return height - 1 - sq / width;
+			}
+			return Integer.MAX_VALUE;
+		}
+		for(long bits = state.black; bits != 0; bits &= bits - 1) {
+			int sq = Long.numberOfTrailingZeros(bits);
+			if(isRunner(sq, blackCone, blackConeHigh, state.white, state.whiteHigh))
+				return sq / width;
+		}
+		for(long bits = state.blackHigh; bits != 0; bits &= bits - 1) {
+			int sq = 64 + Long.numberOfTrailingZeros(bits);
+			if(isRunner(sq, blackCone, blackConeHigh, state.white, state.whiteHigh))
+				return sq / width;
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	private static boolean isRunner(int sq, long[] cone, long[] coneHigh, long enemies, long enemiesHigh) {
+		return (cone[sq] & enemies) == 0 && (coneHigh[sq] & enemiesHigh) == 0;
+	}
+
+	/**
+	 * @return the score of a decided position for the player to move, in the scale of
+	 * Tablebase.score (a win in d plies scores WIN_SCORE - d), 0 if it is not decided
+	 */
+	public int decidedScore(State state) {
+		boolean us = state.isWhiteTurn;
+		if(state.threatensWin(us))
+			return Tablebase.WIN_SCORE - 1;
+		int ours = runnerDistance(state, us), theirs = runnerDistance(state, !us);
+		if(ours != Integer.MAX_VALUE && ours <= state.distanceToGoal(!us) && keepsMoving(state, !us, ours - 1))
+			return Tablebase.WIN_SCORE - (2 * ours - 1);		// We move first, so a tie in the race is ours
+		if(theirs != Integer.MAX_VALUE && theirs < state.distanceToGoal(us) && keepsMoving(state, us, theirs))
+			return -(Tablebase.WIN_SCORE - 2 * theirs);
+		return 0;
+	}
+
+	/**
+	 * @return true if the color has a pawn with at least the given number of empty cells straight
+	 * ahead and no enemy pawn diagonally next to them, so it can't get stuck for that many moves
+	 * while the opponent only pushes a runner
+	 */
+	private boolean keepsMoving(State state, boolean ofWhite, int moves) {
+		if(moves == 0)
+			return true;
+		int step = ofWhite ? width : -width;
+		for(int word = 0; word < 2; word++) {
+			for(long bits = word == 0 ? (ofWhite ? state.white : state.black) : (ofWhite ? state.whiteHigh : state.blackHigh); bits != 0; bits &= bits - 1) {
+				int sq = 64 * word + Long.numberOfTrailingZeros(bits);
+				int x = sq % width, free = 0;
+				for(int cell = sq + step; free < moves && cell >= 0 && cell < width * height; cell += step) {
+					if(state.isOccupied(cell, true) || state.isOccupied(cell, false))
+						break;
+					if(x > 0 && state.isOccupied(cell - 1, !ofWhite) || x < width - 1 && state.isOccupied(cell + 1, !ofWhite))
+						break;								// It could capture off its column and get stuck there
+					free++;
+				}
+				if(free == moves)
+					return true;
+			}
+		}
+		return false;
+	}
+}
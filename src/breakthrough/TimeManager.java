@@ -0,0 +1,86 @@
+package breakthrough;
+
+/**
+ * Decides when the searchers of a match have to stop.
+ * The searchers poll the clock only every POLL_INTERVAL nodes and stop by returning when the
+ * stopped flag is up, instead of reading the clock at every node. A margin is kept off the
+ * playclock for the network and logging, and a new iteration is only started if the previous
+ * ones suggest it can finish in time.
+ */
+public class TimeManager {
+
+	public static final int POLL_MASK = 1024 - 1;	// The clock is read when the node count is a multiple of 1024
+
+	private final int marginMillis;				// Kept off the playclock for sending the reply
+	private final long nodeLimit;				// Nodes the main searcher may expand per search, 0 for no limit
+	private final int depthLimit;				// Deepest iteration to search, 0 for no limit
+	private volatile long deadline;
+	private volatile boolean stopped;
+
+	public TimeManager(int marginMillis, long nodeLimit, int depthLimit) {
+		this.marginMillis = marginMillis;
+		this.nodeLimit = nodeLimit;
+		this.depthLimit = depthLimit;
+	}
+
+	/**
+	 * Starts a search that has to answer within the playclock
+	 */
+	public void start(long startTime, int playclock) {
+		setDeadline(startTime, playclock);
+		stopped = false;
+	}
+
+	/**
+	 * Starts a search with no deadline, it runs until stop() or setDeadline() is called
+	 */
+	public void startUnlimited() {
+		deadline = Long.MAX_VALUE;
+		stopped = false;
+	}
+
+	/**
+	 * Gives a running search a deadline, a ponder search gets one when the opponent has moved
+	 */
+	public void setDeadline(long startTime, int playclock) {
+		deadline = startTime + Math.max(playclock - marginMillis, playclock / 2);
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Reads the clock, called by the searchers every POLL_MASK + 1 nodes. Only the nodes of the
+	 * main searcher count against the limit, the helpers stop with it, so the budget is the same
+	 * however the threads are scheduled.
+	 * @param nodes the number of nodes the calling searcher has expanded in this search
+	 * @param isMain true for the main searcher
+	 * @return true if the search has to stop
+	 */
+	public boolean poll(long nodes, boolean isMain) {
+		if(System.currentTimeMillis() >= deadline || isMain && nodeLimit > 0 && nodes >= nodeLimit)
+			stopped = true;
+		return stopped;
+	}
+
+	/**
+	 * @return true if the iteration of the given depth is the last one allowed
+	 */
+	public boolean isDepthLimit(int depth) {
+		return depthLimit > 0 && depth >= depthLimit;
+	}
+
+	/**
+	 * Predicts the time of the next iteration from the last one and the effective branching factor
+	 * @return true if the next iteration is expected to finish before the deadline
+	 */
+	public boolean canStartIteration(long lastIterationMillis, double branchingFactor) {
+		long remaining = deadline - System.currentTimeMillis();
+		return !stopped && remaining > 0 && lastIterationMillis * branchingFactor < remaining;
+	}
+}
@@ -0,0 +1,97 @@
+package breakthrough;
+
+/**
+ * Fixed size transposition table made of two primitive arrays, no objects per entry.
+ * The table is split into buckets of two slots: the first slot keeps the deepest search
+ * of the current search generation, the second slot is always replaced.
+ * An entry is packed into a single long, see the static accessors for the layout.
+ * <p>
+ * The table is shared by the lazy SMP searchers without locks: the key array holds the
+ * key xor the data, so an entry torn by two threads writing the same slot fails the key check
+ * and reads as a miss instead of as another position's data.
+ */
+public class TranspositionTable {
+
+	public static final int EXACT = 1;			// The score is the exact value of the position
+	public static final int LOWER = 2;			// The search failed high, the value is at least the score
+	public static final int UPPER = 3;			// The search failed low, the value is at most the score
+	public static final int SOLVED = 255;		// Depth of a search that reached the end of the game on every line
+
+	private static final int ENTRY_BYTES = 16;	// A key and a data word
+
+	private final long[] keys;					// Key xor data of each slot
+	private final long[] data;					// score (bits 0-31), move (32-46), depth (47-54), bound (55-56), generation (57-62)
+	private final int bucketMask;
+	private int generation;
+
+	/**
+	 * @param megabytes the memory budget, the table gets the largest power of two buckets that fits
+	 */
+	public TranspositionTable(int megabytes) {
+		long entries = Math.max(2, (long) megabytes * 1024 * 1024 / ENTRY_BYTES);
+		int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 29));
+		keys = new long[2 * buckets];
+		data = new long[2 * buckets];
+		bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Called before every search so the depth preferred slots from older searches can be replaced
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & 0x3F;
+	}
+
+	public void clear() {
+		java.util.Arrays.fill(keys, 0);
+		java.util.Arrays.fill(data, 0);
+		generation = 0;
+	}
+
+	/**
+	 * @return the packed entry for the key, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int slot = ((int) key & bucketMask) << 1;
+		long entry = data[slot];
+		if(entry != 0 && (keys[slot] ^ entry) == key)
+			return entry;
+		entry = data[slot + 1];
+		if(entry != 0 && (keys[slot + 1] ^ entry) == key)
+			return entry;
+		return 0;
+	}
+
+	public void store(long key, int score, int move, int depth, int bound) {
+		int slot = ((int) key & bucketMask) << 1;
+		long entry = (score & 0xFFFFFFFFL) | (long) (move & 0x7FFF) << 32 | (long) depth << 47 | (long) bound << 55 | (long) generation << 57;
+		long old = data[slot];
+		if(old == 0 || (keys[slot] ^ old) == key || depth(old) <= depth || generation(old) != generation) {
+			keys[slot] = key ^ entry;					// Depth preferred slot
+			data[slot] = entry;
+		} else {
+			keys[slot + 1] = key ^ entry;				// Always replace slot
+			data[slot + 1] = entry;
+		}
+	}
+
+	public static int score(long entry) {
+		return (int) entry;
+	}
+
+	public static int move(long entry) {
+		return (int) (entry >>> 32) & 0x7FFF;
+	}
+
+	public static int depth(long entry) {
+		return (int) (entry >>> 47) & 0xFF;
+	}
+
+	public static int bound(long entry) {
+		return (int) (entry >>> 55) & 0x3;
+	}
+
+	private static int generation(long entry) {
+		return (int) (entry >>> 57) & 0x3F;
+	}
+}
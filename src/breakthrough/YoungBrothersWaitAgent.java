@@ -0,0 +1,303 @@
+package breakthrough;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel alpha-beta by tree splitting (Young Brothers Wait).
+ * The eldest child of a node is searched serially, once it has set a bound the younger
+ * brothers are searched as fork/join tasks. The brothers share the window of their node,
+ * every node below reads it again after each child so a bound found by one brother narrows
+ * the search of the others, and they are cancelled as soon as one of them causes a cutoff.
+ * Scores are for the player to move at the root (MAX), with the same leaf evaluation as
+ * Search, so the two engines can be compared on identical positions. The node and depth
+ * limits of SearchConfig apply too, the nodes of all threads count, since they make one search.
+ */
+public class YoungBrothersWaitAgent implements Agent {
+
+	private static final int MIN_SPLIT_DEPTH = 3;	// Nodes closer to the leaves are searched serially, a task costs more than they do
+
+	private static class CancelledException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		CancelledException() {
+			super(null, null, false, false);		// Thrown a lot, so no stack trace
+		}
+	};
+	private static final CancelledException CANCELLED = new CancelledException();
+
+	/**
+	 * The bound and the cancel flag shared by the brothers searched in parallel below a node
+	 */
+	private static class Split {
+		final Split parent;
+		final boolean isMax;
+		final int alpha, beta;						// Window of the node when it was split
+		int value;									// Best value so far, the max of a MAX node and the min of a MIN node
+		int bestMove;
+		volatile boolean isCancelled;
+
+		Split(Split parent, boolean isMax, int alpha, int beta, int value, int bestMove) {
+			this.parent = parent;
+			this.isMax = isMax;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.value = value;
+			this.bestMove = bestMove;
+		}
+
+		synchronized int alpha() {
+			return isMax ? Math.max(alpha, value) : alpha;
+		}
+
+		synchronized int beta() {
+			return isMax ? beta : Math.min(beta, value);
+		}
+
+		synchronized void update(int childValue, int move) {
+			if(isMax ? childValue > value : childValue < value) {
+				value = childValue;
+				bestMove = move;
+				if(isMax ? value >= beta : value <= alpha)
+					isCancelled = true;				// Cutoff, the remaining brothers are wasted work
+			}
+		}
+
+		boolean isCancelled() {
+			for(Split split = this; split != null; split = split.parent)
+				if(split.isCancelled)
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * A younger brother, searched on its own copy of the state
+	 */
+	private class BrotherTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Split node;
+		private final State state;
+		private final int move;
+		private final int depth;
+
+		BrotherTask(Split node, State state, int move, int depth) {
+			this.node = node;
+			this.state = state;
+			this.move = move;
+			this.depth = depth;
+		}
+
+		@Override
+		protected void compute() {
+			int alpha = node.alpha(), beta = node.beta();
+			if(alpha >= beta || node.isCancelled())
+				return;
+			try {
+				int value = search(state.successorState(move), alpha, beta, depth, !node.isMax, node, new int[depth + 1][State.MAX_MOVES], 0);
+				node.update(value, move);
+			} catch(CancelledException e) {
+				// An ancestor was cut off or the time ran out, the caller finds out from the split
+			}
+		}
+	}
+
+	private String role; 		// the name of this agent's role (white or BLACK)
+	private int playclock; 		// this is how much time (in milliseconds) we have before nextAction needs to return a move
+	private boolean myTurn; 	// whether it is this agent's turn or not
+	private int width, height; 	// dimensions of the board
+	private Pawn[][] board;		// The game board
+	private SearchConfig config;
+	private ForkJoinPool pool;
+	private TranspositionTable table;
+	private TimeManager time;					// Node and depth limits, the clock is also watched by searchForBestMove
+	private final AtomicLong nodes = new AtomicLong();	// Nodes of all threads in the current move
+	private volatile boolean isCutOff;	// Some line of the current iteration stopped at the depth limit
+
+	public YoungBrothersWaitAgent(SearchConfig config) {
+		this.config = config;
+	}
+
+	@Override
+	public void init(String role, int width, int height, int playclock) {
+		this.role = role;
+		this.playclock = playclock * 1000; 	// Convert to milliseconds
+		myTurn = !role.equals("white");
+		this.width = width;
+		this.height = height;
+		initBoard();
+		time = new TimeManager(config.marginMillis, config.nodes, config.depth);
+		if(pool == null) {
+			pool = new ForkJoinPool(config.threads);
+			table = new TranspositionTable(config.hashMegabytes);
+		}
+		else
+			table.clear();
+	}
+
+	private void initBoard() {
+		board = new Pawn[height + 2][width + 2];
+		for(int i = 1; i <= width; i++){
+			board[1][i] = Pawn.WHITE;
+			board[2][i] = Pawn.WHITE;
+			board[height][i] = Pawn.BLACK;
+			board[height - 1][i] = Pawn.BLACK;
+		}
+	}
+
+	@Override
+	public String nextAction(int[] lastmove) {
+		long startTime = System.currentTimeMillis();
+		if(lastmove != null) {
+			board[lastmove[3]][lastmove[2]] = board[lastmove[1]][lastmove[0]];
+			board[lastmove[1]][lastmove[0]] = null;
+		}
+		myTurn = !myTurn;
+		if(!myTurn)
+			return "NOOP";
+		State state = new State(board, role.equals("white"));
+		int[] action = state.unpackMove(searchForBestMove(state, startTime));
+		return "(move " + action[0] + " " + action[1] + " " + action[2] + " " + action[3] + ")";
+	}
+
+	@Override
+	public void cleanup() {
+	}
+
+	/**
+	 * Iterative deepening, every iteration is one fork/join computation that the calling thread waits on
+	 */
+	private int searchForBestMove(final State state, long startTime) {
+		table.newSearch();
+		time.start(startTime, playclock);
+		nodes.set(0);
+		final int[] moves = new int[State.MAX_MOVES];
+		final int count = state.legalMoves(moves);
+		int bestMove = moves[0];
+		for(int depth = 1; depth < MoveOrdering.MAX_PLY; depth++) {
+			final int iterationDepth = depth;
+			final Split root = new Split(null, true, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, 0);
+			isCutOff = false;
+			ForkJoinTask<?> iteration = pool.submit(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					searchRoot(state, moves, count, iterationDepth, root);
+				}
+			});
+			try {
+				iteration.get(Math.max(0, startTime + playclock - config.marginMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch(TimeoutException e) {
+				root.isCancelled = true;				// Out of time, abandon this iteration
+				iteration.quietlyJoin();
+				break;
+			} catch(Exception e) {
+				if(!time.isStopped())
+					e.printStackTrace();
+				break;
+			}
+			if(time.isStopped())
+				break;								// Out of nodes, the iteration was abandoned halfway
+			bestMove = root.bestMove;
+			moveToFront(moves, count, bestMove);		// Search it first in the next iteration
+			if(!isCutOff || time.isDepthLimit(depth))
+				break;								// Every line reached the end of the game, or deep enough
+		}
+		return bestMove;
+	}
+
+	private void searchRoot(State state, int[] moves, int count, int depth, Split root) {
+		int value = search(state.successorState(moves[0]), Integer.MIN_VALUE, Integer.MAX_VALUE, depth - 1, false, root, new int[depth + 1][State.MAX_MOVES], 0);
+		state.rewindState();
+		root.update(value, moves[0]);
+		BrotherTask[] brothers = new BrotherTask[count - 1];
+		for(int i = 1; i < count; i++)
+			brothers[i - 1] = new BrotherTask(root, new State(state), moves[i], depth - 1);
+		ForkJoinTask.invokeAll(brothers);
+	}
+
+	private int search(State state, int alpha, int beta, int depth, boolean isMax, Split split, int[][] buffers, int ply) {
+		long expanded = nodes.incrementAndGet();
+		if(time.isStopped() || (expanded & TimeManager.POLL_MASK) == 0 && time.poll(expanded, true) || split.isCancelled())
+			throw CANCELLED;
+		if(depth == 0) {
+			if(!isCutOff)
+				isCutOff = true;
+			return isMax ? state.eval() : -state.eval();
+		}
+		if(state.isTerminal)
+			return isMax ? state.eval() : -state.eval();
+		if(!state.hasLegalMoves())
+			return 0;									// Stuck, a draw
+		long key = state.getZobristKey();
+		long entry = table.probe(key);
+		if(entry != 0 && TranspositionTable.depth(entry) >= depth) {
+			int score = TranspositionTable.score(entry);
+			int bound = TranspositionTable.bound(entry);
+			if(bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER && score >= beta || bound == TranspositionTable.UPPER && score <= alpha) {
+				if(!isCutOff)
+					isCutOff = true;					// No way to tell if the stored search reached the end of the game everywhere
+				return score;
+			}
+		}
+		int alphaOrig = alpha, betaOrig = beta;
+		int windowAlpha = alpha, windowBeta = beta;		// Window from above, narrowed as the split tightens it
+		int[] moves = buffers[ply];
+		int count = state.legalMoves(moves);
+		if(entry != 0)
+			moveToFront(moves, count, TranspositionTable.move(entry));
+
+		// The eldest brother is searched serially to establish a bound
+		int value = search(state.successorState(moves[0]), alpha, beta, depth - 1, !isMax, split, buffers, ply + 1);
+		state.rewindState();
+		int bestMove = moves[0];
+		boolean isSplit = false;
+		for(int i = 1; ; i++) {
+			// Brothers finishing elsewhere keep tightening the window of the split, read it after every child
+			windowAlpha = Math.max(windowAlpha, split.alpha());
+			windowBeta = Math.min(windowBeta, split.beta());
+			if(windowAlpha >= windowBeta)
+				return isMax ? Math.max(value, betaOrig) : Math.min(value, alphaOrig);	// Nothing below matters any more, leaves the parent as it is and isn't stored
+			alpha = isMax ? Math.max(windowAlpha, value) : windowAlpha;
+			beta = isMax ? windowBeta : Math.min(windowBeta, value);
+			if(i == count || isSplit || alpha >= beta)
+				break;
+			if(depth >= MIN_SPLIT_DEPTH) {
+				Split node = new Split(split, isMax, alpha, beta, value, bestMove);
+				BrotherTask[] brothers = new BrotherTask[count - 1];
+				for(int j = 1; j < count; j++)
+					brothers[j - 1] = new BrotherTask(node, new State(state), moves[j], depth - 1);
+				ForkJoinTask.invokeAll(brothers);
+				if(time.isStopped() || split.isCancelled())
+					throw CANCELLED;					// The brothers may have given up halfway, their bound is worthless
+				value = node.value;
+				bestMove = node.bestMove;
+				isSplit = true;
+			} else {
+				int childValue = search(state.successorState(moves[i]), alpha, beta, depth - 1, !isMax, split, buffers, ply + 1);
+				state.rewindState();
+				if(isMax ? childValue > value : childValue < value) {
+					value = childValue;
+					bestMove = moves[i];
+				}
+			}
+		}
+		int bound = value <= windowAlpha ? TranspositionTable.UPPER : value >= windowBeta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		table.store(key, value, bestMove, depth, bound);
+		return value;
+	}
+
+	private static void moveToFront(int[] moves, int count, int move) {
+		for(int i = 0; i < count; i++) {
+			if((moves[i] & 0x3FFF) == (move & 0x3FFF)) {		// Same from and to cells, the capture flag may differ
+				int found = moves[i];
+				System.arraycopy(moves, 0, moves, 1, i);
+				moves[0] = found;
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import breakthrough.KifMessage;
+
+public class KifMessageTests {
+
+	private static final String RULES = "((role white) (role black) (init (control white)) (width 7) (height 6) (<= (legal ?p noop) (true (control ?q))))";
+
+	@Test
+	public void startTest() {
+		KifMessage msg = KifMessage.parse("(START match1 WHITE " + RULES + " 1800 120)");
+		assertEquals(KifMessage.START, msg.command);
+		assertEquals("match1", msg.matchId);
+		assertEquals("white", msg.role);
+		assertEquals(1800, msg.startclock);
+		assertEquals(120, msg.playclock);
+		assertEquals(7, msg.width);
+		assertEquals(6, msg.height);
+	}
+
+	@Test
+	public void startIgnoresCaseAndSpaceTest() {
+		KifMessage msg = KifMessage.parse("  ( start match2 black ((WIDTH 5) ( Height  8 ))\n 60\t10 ) ");
+		assertEquals(KifMessage.START, msg.command);
+		assertEquals("black", msg.role);
+		assertEquals(60, msg.startclock);
+		assertEquals(10, msg.playclock);
+		assertEquals(5, msg.width);
+		assertEquals(8, msg.height);
+	}
+
+	@Test
+	public void startSkipsRulesAboutTheSizeTest() {
+		KifMessage msg = KifMessage.parse("(START match3 white ((<= (width ?w) (true (size ?w))) (widths 2) (width 4) (height 9)) 10 5)");
+		assertEquals(4, msg.width);
+		assertEquals(9, msg.height);
+	}
+
+	@Test
+	public void startCachesBoardTest() {
+		KifMessage.parse("(START match4 white ((width 8) (height 8)) 30 10)");
+		KifMessage msg = KifMessage.parse("(START match4 white ((width 3) (height 5)) 40 20)");
+		assertEquals(8, msg.width);							// Taken from the first START of the match
+		assertEquals(8, msg.height);
+		assertEquals(40, msg.startclock);
+		assertEquals(20, msg.playclock);
+	}
+
+	@Test
+	public void playTest() {
+		KifMessage msg = KifMessage.parse("(PLAY match1 NIL)");
+		assertEquals(KifMessage.PLAY, msg.command);
+		assertEquals("match1", msg.matchId);
+		assertNull(msg.lastMove);
+
+		msg = KifMessage.parse("(play match1 (noop (MOVE 2 2 3 3)))");
+		assertEquals(KifMessage.PLAY, msg.command);
+		assertArrayEquals(new int[] {2, 2, 3, 3}, msg.lastMove);
+
+		msg = KifMessage.parse("(PLAY match1 ((move 4 7 4 6) noop))");
+		assertArrayEquals(new int[] {4, 7, 4, 6}, msg.lastMove);
+	}
+
+	@Test
+	public void stopAndAbortTest() {
+		KifMessage msg = KifMessage.parse("(STOP match1 (noop (move 1 5 2 6)))");
+		assertEquals(KifMessage.STOP, msg.command);
+		assertArrayEquals(new int[] {1, 5, 2, 6}, msg.lastMove);
+
+		msg = KifMessage.parse("(ABORT match1)");
+		assertEquals(KifMessage.ABORT, msg.command);
+		assertEquals("match1", msg.matchId);
+	}
+
+	@Test
+	public void unknownCommandTest() {
+		KifMessage msg = KifMessage.parse("(REPLAY match1)");
+		assertEquals("replay", msg.command);
+		assertNull(msg.matchId);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingBoardTest() {
+		KifMessage.parse("(START match5 white ((role white)) 10 5)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void missingClockTest() {
+		KifMessage.parse("(START match6 white ((width 3) (height 5)) 10)");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void badMoveTest() {
+		KifMessage.parse("(PLAY match1 (noop (jump 1 1 1 3)))");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void notAListTest() {
+		KifMessage.parse("START match1");
+	}
+}
@@ -0,0 +1,52 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import breakthrough.Perft;
+import breakthrough.State;
+
+public class PerftTests {
+
+	// Leaf counts from the start position for depth 1 and up, the same as Perft check
+	private static final int[][] BOARDS = {{3, 5}, {5, 5}, {6, 6}, {7, 7}, {8, 8}, {9, 9}};
+	private static final long[][] EXPECTED = {
+		{3, 10, 38, 134, 518, 1962, 7092, 25942, 88980},
+		{5, 28, 182, 1180, 8164, 54668, 377118, 2538670},
+		{6, 36, 256, 1854, 14640, 116902, 991246},
+		{7, 49, 392, 3141, 27206, 236622, 2186362},
+		{8, 64, 576, 5184, 50118, 484684, 4951852},
+		{9, 81, 810, 8100, 86670, 927376, 10452820},
+	};
+
+	@Test
+	public void startPositionCountsTest() throws Exception {
+		for(int b = 0; b < BOARDS.length; b++) {
+			Perft perft = new Perft(State.startPosition(BOARDS[b][0], BOARDS[b][1]), 1);
+			for(int depth = 1; depth <= EXPECTED[b].length; depth++)
+				assertEquals(BOARDS[b][0] + "x" + BOARDS[b][1] + " depth " + depth, EXPECTED[b][depth - 1], perft.count(depth));
+		}
+	}
+
+	@Test
+	public void threadsAgreeTest() throws Exception {
+		State start = State.startPosition(6, 6);
+		assertArrayEquals(new Perft(start, 1).divide(5), new Perft(start, 4).divide(5));
+	}
+
+	@Test
+	public void rewindRestoresKeyTest() {
+		State state = State.startPosition(9, 9);			// Wide enough to use the high words
+		long key = state.getZobristKey();
+		int[] moves = new int[State.MAX_MOVES];
+		int count = state.legalMoves(moves);
+		for(int i = 0; i < count; i++) {
+			state.successorState(moves[i]);
+			assertNotEquals(key, state.getZobristKey());
+			state.rewindState();
+			assertEquals(key, state.getZobristKey());
+		}
+		assertEquals(State.startPosition(9, 9).getZobristKey(), key);
+	}
+}
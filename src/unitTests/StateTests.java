@@ -2,18 +2,15 @@ package unitTests;
 
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
-
 import org.junit.Test;
 
 import breakthrough.Pawn;
 import breakthrough.State;
-import breakthrough.State.SPawn;
 
 public class StateTests {
-	/*
+
 	@Test
-	public void convertToSPawnBoardTest(){
+	public void convertToBitboardsTest(){
 		Pawn[][] pawnBoard = new Pawn[][]
 		{
 			{null, null, null, null, null},
@@ -26,23 +23,9 @@ public class StateTests {
 		
 		State state = new State(pawnBoard, true);
 		
-		for(int i = 1; i < state.board.length - 1; i++) {
-			for(int j = 1; j < state.board[0].length - 1; j++) {
-				if(i < 3)
-					assertEquals(state.board[i][j].isWhite, true);
-				else
-					assertEquals(state.board[i][j].isWhite, false);
-			}
-		}
-		
-		assertEquals(6, state.whiteList.size());
-		assertEquals(6, state.blackList.size());
-		
-		for(SPawn p : state.whiteList)
-			assertEquals(true, p.isWhite);
-		
-		for(SPawn p : state.blackList)
-			assertEquals(false, p.isWhite);
+		assertArrayEquals(pawnBoard, state.getPawnBoard());
+		assertEquals(0x3FL, state.white);
+		assertEquals(0xFC0L, state.black);
 	}
 	
 	@Test
@@ -59,11 +42,12 @@ public class StateTests {
 		
 		State state = new State(pawnBoard, true);
 		
-		ArrayList<int[]> moves = (ArrayList<int[]>) state.legalMoves();
-		assertArrayEquals(new int[]{1,2,2,3}, moves.get(0));
-		assertArrayEquals(new int[]{2,2,1,3}, moves.get(1));
-		assertArrayEquals(new int[]{2,2,3,3}, moves.get(2));
-		assertArrayEquals(new int[]{3,2,2,3}, moves.get(3));
+		int[] moves = new int[State.MAX_MOVES];
+		assertEquals(4, state.legalMoves(moves));
+		assertArrayEquals(new int[]{2,2,1,3}, state.unpackMove(moves[0]));
+		assertArrayEquals(new int[]{3,2,2,3}, state.unpackMove(moves[1]));
+		assertArrayEquals(new int[]{1,2,2,3}, state.unpackMove(moves[2]));
+		assertArrayEquals(new int[]{2,2,3,3}, state.unpackMove(moves[3]));
 	}
 	
 	@Test
@@ -80,11 +64,12 @@ public class StateTests {
 		
 		State state = new State(pawnBoard, false);
 		
-		ArrayList<int[]> moves = (ArrayList<int[]>) state.legalMoves();
-		assertArrayEquals(new int[]{1,3,2,2}, moves.get(0));
-		assertArrayEquals(new int[]{2,3,1,2}, moves.get(1));
-		assertArrayEquals(new int[]{2,3,3,2}, moves.get(2));
-		assertArrayEquals(new int[]{3,3,2,2}, moves.get(3));
+		int[] moves = new int[State.MAX_MOVES];
+		assertEquals(4, state.legalMoves(moves));
+		assertArrayEquals(new int[]{2,3,1,2}, state.unpackMove(moves[0]));
+		assertArrayEquals(new int[]{3,3,2,2}, state.unpackMove(moves[1]));
+		assertArrayEquals(new int[]{1,3,2,2}, state.unpackMove(moves[2]));
+		assertArrayEquals(new int[]{2,3,3,2}, state.unpackMove(moves[3]));
 	}
 	
 	@Test
@@ -110,12 +95,11 @@ public class StateTests {
 		
 		State state = new State(pawnBoard, true);
 		
-		ArrayList<int[]> moves = (ArrayList<int[]>) state.legalMoves();
-		state.successorState(moves.get(0)); 										// Change state according to this action
+		int[] moves = new int[State.MAX_MOVES];
+		assertEquals(4, state.legalMoves(moves));
+		state.successorState(moves[2]); 										// Change state according to this action
 		assertArrayEquals(expectedBoard, state.getPawnBoard());	
-		Pawn pawn = state.blackDeadStack.peek().isWhite ? Pawn.WHITE : Pawn.BLACK;
-		assertEquals(pawnBoard[3][2], pawn);
-		assertEquals(moves.get(0), state.moveStack.peek());
+		assertEquals(5, Long.bitCount(state.black));
 		assertEquals(false, state.isWhiteTurn);
 	}
 	
@@ -131,14 +115,12 @@ public class StateTests {
 			{null, null, null, null, null}
 		};
 		State state = new State(pawnBoard, true);
-		ArrayList<int[]> moves = (ArrayList<int[]>) state.legalMoves();
-		state.successorState(moves.get(0));
+		int[] moves = new int[State.MAX_MOVES];
+		assertEquals(4, state.legalMoves(moves));
+		state.successorState(moves[0]);
 		state.rewindState();
 		assertArrayEquals(pawnBoard, state.getPawnBoard());
-		assertEquals(true, state.blackDeadStack.isEmpty());
-		assertEquals(true, state.moveStack.isEmpty());
+		assertEquals(6, Long.bitCount(state.black));
 		assertEquals(true, state.isWhiteTurn);
-		
 	}
-*/
 }
@@ -0,0 +1,102 @@
+package unitTests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import breakthrough.Pawn;
+import breakthrough.State;
+import breakthrough.Tablebase;
+import breakthrough.TablebaseGenerator;
+
+public class TablebaseTests {
+
+	private static final int WIDTH = 3, HEIGHT = 5, MAX_PAWNS = 2;
+
+	/**
+	 * Every position with up to two pawns a side and no pawn home yet has to match a plain search of the game
+	 */
+	@Test
+	public void matchesSearchTest() throws Exception {
+		File file = File.createTempFile("tablebase", ".btb");
+		file.deleteOnExit();
+		TablebaseGenerator generator = new TablebaseGenerator(WIDTH, HEIGHT, MAX_PAWNS, 2);
+		generator.generate();
+		generator.write(file.getPath());
+		Tablebase tablebase = new Tablebase(file.getPath());
+		assertEquals(WIDTH, tablebase.width);
+		assertEquals(HEIGHT, tablebase.height);
+
+		State state = new State(new Pawn[HEIGHT + 2][WIDTH + 2], true);
+		Map<Long, Integer> solved = new HashMap<Long, Integer>();
+		List<Long> placements = new ArrayList<Long>();		// Every set of up to MAX_PAWNS cells
+		for(long cells = 0; cells < 1L << WIDTH * HEIGHT; cells++) {
+			if(Long.bitCount(cells) <= MAX_PAWNS)
+				placements.add(cells);
+		}
+		int checked = 0;
+		for(long white : placements) {
+			for(long black : placements) {
+				if((white & black) != 0)
+					continue;
+				for(int turn = 0; turn < 2; turn++) {
+					state.setPosition(white, 0, black, 0, turn == 0);
+					if(state.isTerminal)
+						continue;
+					assertTrue(tablebase.covers(state));
+					assertEquals(describe(white, black, turn == 0), solve(state, solved), tablebase.value(state));
+					checked++;
+				}
+			}
+		}
+		assertEquals(9962, checked);						// Placements with no pawn home, for both players to move
+	}
+
+	@Test
+	public void scoreTest() {
+		assertEquals(0, Tablebase.score(Tablebase.DRAW));
+		assertEquals(-Tablebase.WIN_SCORE, Tablebase.score(1));				// Lost on the spot
+		assertEquals(Tablebase.WIN_SCORE - 1, Tablebase.score(2));			// Wins with the next move
+		assertEquals(-(Tablebase.WIN_SCORE - 2), Tablebase.score(3));
+	}
+
+	/**
+	 * @return the table value of the position, found by searching every line to the end of the game
+	 */
+	private static int solve(State state, Map<Long, Integer> solved) {
+		if(state.isTerminal)
+			return 1;
+		long key = state.white | state.black << 32 | (state.isWhiteTurn ? 1L << 63 : 0);
+		Integer known = solved.get(key);
+		if(known != null)
+			return known;
+		int[] moves = new int[State.MAX_MOVES];
+		int count = state.legalMoves(moves);
+		int win = Integer.MAX_VALUE, loss = 0;
+		boolean canDraw = false;
+		for(int i = 0; i < count; i++) {
+			state.successorState(moves[i]);
+			int child = solve(state, solved);
+			state.rewindState();
+			if(child == Tablebase.DRAW)
+				canDraw = true;
+			else if(child % 2 == 1)
+				win = Math.min(win, child + 1);				// The opponent loses
+			else
+				loss = Math.max(loss, child + 1);
+		}
+		int value = win != Integer.MAX_VALUE ? win : canDraw || count == 0 ? Tablebase.DRAW : loss;
+		solved.put(key, value);
+		return value;
+	}
+
+	private static String describe(long white, long black, boolean isWhiteTurn) {
+		return "white " + Long.toBinaryString(white) + " black " + Long.toBinaryString(black) + (isWhiteTurn ? " white" : " black") + " to move";
+	}
+}